@@ -0,0 +1,41 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Password logins through the model getters: one lookup by username plus one hash, for random seeded accounts.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBenchmark {
+
+    private final Random random = new Random(4140);
+
+    @Benchmark
+    public Patient patientGetter(SeededDatabase db) throws SQLException {
+        String username = DataSeeder.patientName(random.nextInt(db.getPatients()));
+        return new Patient.PatientGetter(username, DataSeeder.PASSWORD).get();
+    }
+
+    @Benchmark
+    public Caregiver caregiverGetter(SeededDatabase db) throws SQLException {
+        String username = DataSeeder.caregiverName(random.nextInt(db.getCaregivers()));
+        return new Caregiver.CaregiverGetter(username, DataSeeder.PASSWORD).get();
+    }
+}
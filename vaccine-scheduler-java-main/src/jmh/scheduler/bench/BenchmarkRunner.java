@@ -0,0 +1,181 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import scheduler.util.Util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Runs the JMH benchmarks of the scheduler's hot paths against a freshly seeded embedded database, and optionally
+// fails when they got slower than a previous run.
+//
+//     mvn package
+//     java -jar target/benchmarks.jar [--scale 0.01] [--indexes true] [--database memory] [--include <regex>]
+//                                     [--out bench-results.csv] [--baseline old.csv] [--tolerance 10]
+//                                     [--jvm-args "-Xmx3g -DAvailabilityStalenessSec=600"]
+//
+// --scale 1 seeds the full production-sized data set (see DataSeeder); the default is a hundredth of that so a run
+// takes minutes. Every benchmark runs in its own forked JVM with JMH's warmup and measurement iterations; see the
+// *Benchmark classes; --jvm-args are passed to those JVMs, e.g. a heap size or scheduler settings as -D system
+// properties. Results are written by JMH, as JSON when --out ends in .json and as CSV otherwise. With
+// --baseline (a CSV from an earlier run), any benchmark whose average time got worse than the baseline's by more
+// than --tolerance percent is reported and the runner exits with status 1, so a build script can stop a regression
+// before it is deployed.
+//
+// --indexes false seeds the database without create.sql's indexes, which gives the "before" side of a schema
+// change, and --database disk keeps a large data set in a temporary file rather than the heap; for the hot-path
+// indexes at production size:
+//
+//     java -jar target/benchmarks.jar --scale 1 --database disk --indexes false --out before.csv
+//     java -jar target/benchmarks.jar --scale 1 --database disk --baseline before.csv
+//
+// Any other JMH option is available through JMH's own launcher: java -cp target/benchmarks.jar org.openjdk.jmh.Main
+public class BenchmarkRunner {
+
+    private static final String BENCHMARKS = "scheduler\\.bench\\..*Benchmark\\..*";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (options == null) {
+            System.out.println("Usage: BenchmarkRunner [--scale <fraction>] [--indexes <true|false>] " +
+                    "[--database <memory|disk>] [--include <regex>] [--out <file>] [--baseline <file>] " +
+                    "[--tolerance <percent>] [--jvm-args <arguments>]");
+            System.exit(2);
+        }
+
+        // seeding millions of rows into a shared database would be a disaster; only ever run embedded
+        String storage = Util.getSetting("Storage");
+        if (storage != null && !storage.equalsIgnoreCase("embedded")) {
+            System.out.println("Benchmarks only run against embedded storage, but Storage=" + storage);
+            System.exit(2);
+        }
+
+        String out = options.getOrDefault("out", "bench-results.csv");
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .include(options.getOrDefault("include", BENCHMARKS))
+                .param("scale", options.getOrDefault("scale", "0.01"))
+                .param("indexes", options.getOrDefault("indexes", "true"))
+                .param("database", options.getOrDefault("database", "memory"))
+                .jvmArgsAppend(jvmArgs(options.getOrDefault("jvm-args", "")))
+                .resultFormat(out.endsWith(".json") ? ResultFormatType.JSON : ResultFormatType.CSV)
+                .result(out);
+        Collection<RunResult> results;
+        try {
+            results = new Runner(builder.build()).run();
+        } catch (RunnerException e) {
+            System.out.println("Benchmarks failed: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.out.println("Wrote " + out);
+
+        if (options.containsKey("baseline")) {
+            double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "10"));
+            if (!compare(results, Paths.get(options.get("baseline")), tolerance)) {
+                System.exit(1);
+            }
+        }
+        System.exit(0);
+    }
+
+    // true if no benchmark regressed by more than tolerance percent against the baseline CSV
+    private static boolean compare(Collection<RunResult> results, Path baselineFile, double tolerance)
+            throws IOException {
+        Map<String, Double> baseline = readCsv(baselineFile);
+        boolean ok = true;
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            // the same benchmark at another --indexes setting is exactly what a before/after run compares
+            Double before = baseline.get(benchmark + scaleKey(result.getParams().getParam("scale")));
+            if (before == null || before == 0) {
+                continue;
+            }
+            double after = result.getPrimaryResult().getScore();
+            double change = (after - before) / before * 100;
+            String line = String.format(Locale.ROOT, "%-60s %12.1f -> %12.1f %s (%+.1f%%)", benchmark, before,
+                    after, result.getPrimaryResult().getScoreUnit(), change);
+            if (change > tolerance) {
+                ok = false;
+                line += "  REGRESSION";
+            }
+            System.out.println(line);
+        }
+        return ok;
+    }
+
+    // benchmark and scale -> score, from a CSV JMH wrote for an earlier run
+    private static Map<String, Double> readCsv(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        Map<String, Double> scores = new HashMap<>();
+        if (lines.isEmpty()) {
+            return scores;
+        }
+        List<String> header = splitCsv(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int score = header.indexOf("Score");
+        int scale = header.indexOf("Param: scale");
+        if (benchmark < 0 || score < 0) {
+            throw new IOException(file + " is not a JMH CSV result file");
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> fields = splitCsv(line);
+            if (fields.size() != header.size()) {
+                continue;
+            }
+            String key = fields.get(benchmark) + scaleKey(scale < 0 ? null : fields.get(scale));
+            scores.put(key, Double.parseDouble(fields.get(score)));
+        }
+        return scores;
+    }
+
+    private static String scaleKey(String scale) {
+        return scale == null || scale.isEmpty() ? "" : " scale=" + Double.parseDouble(scale);
+    }
+
+    // JMH quotes every text field and never puts a comma or quote inside one
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        for (String field : line.split(",", -1)) {
+            fields.add(field.trim().replace("\"", ""));
+        }
+        return fields;
+    }
+
+    // every fork runs embedded, whatever else it is given
+    private static String[] jvmArgs(String extra) {
+        List<String> args = new ArrayList<>();
+        args.add("-DStorage=embedded");
+        for (String arg : extra.trim().split("\\s+")) {
+            if (!arg.isEmpty()) {
+                args.add(arg);
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    // --name value pairs; null if the arguments are malformed
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new TreeMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                return null;
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,53 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import scheduler.Scheduler;
+import scheduler.Session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// One benchmark thread's users: a logged-in patient and caregiver, each with its own session, and their own random
+// choices. Commands go through Scheduler.execute exactly as a REPL or server user's would, and return what the
+// command printed so JMH consumes it.
+@State(Scope.Thread)
+public class Client {
+
+    private final Random random = new Random(4140);
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final Session patient = new Session(new PrintStream(output, true, StandardCharsets.UTF_8), "benchmark");
+    private final Session caregiver = new Session(new PrintStream(output, true, StandardCharsets.UTF_8), "benchmark");
+
+    // the seeded database is set up first, as a dependency of this state
+    @Setup
+    public void login(SeededDatabase db) {
+        asPatient("login_patient " + DataSeeder.patientName(0) + " " + DataSeeder.PASSWORD);
+        asCaregiver("login_caregiver " + DataSeeder.caregiverName(0) + " " + DataSeeder.PASSWORD);
+    }
+
+    public String asPatient(String line) {
+        return run(patient, line);
+    }
+
+    public String asCaregiver(String line) {
+        return run(caregiver, line);
+    }
+
+    public String randomOpenDate() {
+        return DataSeeder.FIRST_OPEN_DATE.plusDays(random.nextInt(DataSeeder.FUTURE_DAYS)).toString();
+    }
+
+    public String randomVaccine() {
+        return DataSeeder.VACCINES[random.nextInt(DataSeeder.VACCINES.length)];
+    }
+
+    private String run(Session session, String line) {
+        output.reset();
+        Scheduler.execute(session, line);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
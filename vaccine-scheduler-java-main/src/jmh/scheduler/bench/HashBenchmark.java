@@ -0,0 +1,33 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.util.HashSpec;
+import scheduler.util.Util;
+
+import java.util.concurrent.TimeUnit;
+
+// The password hash on its own, at the spec new accounts get (HashAlgorithm / HashIterations).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBenchmark {
+
+    private final byte[] salt = Util.generateSalt();
+    private final HashSpec spec = HashSpec.current();
+
+    @Benchmark
+    public byte[] generateHash() {
+        return Util.generateHash(DataSeeder.PASSWORD, salt, spec);
+    }
+}
@@ -0,0 +1,59 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// reserve and reserve_earliest through Scheduler.execute. Every booking is cancelled again after its invocation,
+// outside the measured time, so the open slots and doses stay the same however long the run is; otherwise later
+// iterations would only time the "no caregiver is available" path.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReserveBenchmark {
+
+    private static final Pattern BOOKED = Pattern.compile("Appointment ID (\\d+),");
+
+    @State(Scope.Thread)
+    public static class Booking {
+        private String output = "";
+
+        // invocation-level fixtures add a little timing overhead per call, which is negligible next to a reserve's
+        // database transaction
+        @TearDown(Level.Invocation)
+        public void cancel(Client client) {
+            Matcher matcher = BOOKED.matcher(output);
+            if (matcher.find()) {
+                client.asPatient("cancel " + matcher.group(1));
+            }
+            output = "";
+        }
+    }
+
+    @Benchmark
+    public String reserve(Client client, Booking booking) {
+        booking.output = client.asPatient("reserve " + client.randomOpenDate() + " " + client.randomVaccine());
+        return booking.output;
+    }
+
+    @Benchmark
+    public String reserveEarliest(Client client, Booking booking) {
+        booking.output = client.asPatient("reserve_earliest " + client.randomVaccine() + " " +
+                client.randomOpenDate());
+        return booking.output;
+    }
+}
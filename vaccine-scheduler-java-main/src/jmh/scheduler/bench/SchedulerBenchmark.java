@@ -0,0 +1,43 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Date;
+import java.util.concurrent.TimeUnit;
+
+// The read-mostly commands, end to end through Scheduler.execute on the seeded database.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    @Benchmark
+    public String searchCaregiverSchedule(Client client) {
+        return client.asPatient("search_caregiver_schedule " + client.randomOpenDate());
+    }
+
+    @Benchmark
+    public String searchCaregiverScheduleRange(Client client) {
+        String from = client.randomOpenDate();
+        return client.asPatient("search_caregiver_schedule " + from + " " +
+                Date.valueOf(from).toLocalDate().plusDays(30) + " " + client.randomVaccine());
+    }
+
+    @Benchmark
+    public String showAppointments(Client client) {
+        return client.asPatient("show_appointments");
+    }
+
+    @Benchmark
+    public String addDoses(Client client) {
+        return client.asCaregiver("add_doses " + client.randomVaccine() + " 1");
+    }
+}
@@ -0,0 +1,85 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineInventory;
+import scheduler.reservation.CaregiverLoad;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// The embedded database every database benchmark runs against, seeded once per fork by DataSeeder.
+//
+// scale 1 is the production-sized data set (100k caregivers, 1M availabilities, 10M appointments); the default is a
+// hundredth of that so a full run takes minutes. indexes=false seeds without create.sql's indexes, which gives the
+// "before" side of a schema change. database=disk keeps the data in a temporary H2 file instead of the heap, which
+// a scale 1 data set needs on a machine with only a few gigabytes of memory. All three are JMH parameters, e.g.
+// -p scale=1 -p indexes=false -p database=disk.
+@State(Scope.Benchmark)
+public class SeededDatabase {
+
+    @Param("0.01")
+    public double scale;
+
+    @Param("true")
+    public boolean indexes;
+
+    @Param("memory")
+    public String database;
+
+    private DataSeeder seeder;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        // read by EmbeddedStorage when the first connection is opened, so they must be set before that
+        System.setProperty("Storage", "embedded");
+        System.setProperty("EmbeddedIndexes", String.valueOf(indexes));
+        if (database.equals("disk")) {
+            try {
+                directory = Files.createTempDirectory("scheduler-bench");
+            } catch (IOException e) {
+                throw new SQLException("Could not create a directory for the benchmark database", e);
+            }
+            // H2's default page cache of a few megabytes thrashes on a scale 1 data set; give it half the heap
+            long cacheKb = Runtime.getRuntime().maxMemory() / 2 / 1024;
+            System.setProperty("EmbeddedUrl", "jdbc:h2:file:" + directory.resolve("scheduler") +
+                    ";MODE=MSSQLServer;TRACE_LEVEL_FILE=0;CACHE_SIZE=" + cacheKb);
+        } else if (!database.equals("memory")) {
+            throw new IllegalArgumentException("database must be memory or disk, not " + database);
+        }
+        seeder = new DataSeeder(scale, System.out::println);
+        seeder.seed();
+        AvailabilityIndex.getInstance().start();
+        VaccineInventory.getInstance().start();
+        CaregiverLoad.getInstance().start();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    public int getCaregivers() {
+        return seeder.getCaregivers();
+    }
+
+    public int getPatients() {
+        return seeder.getPatients();
+    }
+}
@@ -1,7 +1,11 @@
+-- keep in step with the migrations in scheduler.db.migration, see MigrationRunner
+
+-- HashSpec is "algorithm:iterations:keyBits" (see HashSpec.java); NULL means the legacy PBKDF2WithHmacSHA1:10:16
 CREATE TABLE Caregivers (
     Username varchar(255),
     Salt BINARY(16),
     Hash BINARY(16),
+    HashSpec varchar(64),
     PRIMARY KEY (Username)
 );
 
@@ -17,18 +21,53 @@ CREATE TABLE Vaccines (
     PRIMARY KEY (Name)
 );
 
+CREATE TABLE Patients (
+    Username varchar(255),
+    Salt BINARY(16),
+    Hash BINARY(16),
+    HashSpec varchar(64),
+    PRIMARY KEY (Username)
+);
+
 CREATE TABLE Appointments (
     Time date,
-    appointmentID varchar(255),
+    appointmentID int,
     caregiverUsername varchar(255) REFERENCES Caregivers(Username),
     patientUsername varchar(255) REFERENCES Patients(Username),
     vaccineName varchar(255) REFERENCES Vaccines(Name),
     PRIMARY KEY (appointmentID)
 );
 
-CREATE TABLE Patients (
+-- show_appointments pages through a user's appointments in ID order; the indexes cover every column it reads
+CREATE INDEX AppointmentsByCaregiver ON Appointments (caregiverUsername, appointmentID, Time, vaccineName, patientUsername);
+CREATE INDEX AppointmentsByPatient ON Appointments (patientUsername, appointmentID, Time, vaccineName, caregiverUsername);
+-- reserve checks whether a caregiver is already booked on a day
+-- (existing databases get these three indexes from migration 2, see MigrationRunner)
+CREATE INDEX AppointmentsBySlot ON Appointments (caregiverUsername, Time);
+
+-- appointment IDs are handed out in blocks; INCREMENT BY must match AppointmentIdAllocator.BLOCK_SIZE
+-- (databases created before the sequence existed get it, and an int appointmentID, from migration 1)
+CREATE SEQUENCE AppointmentIds START WITH 1 INCREMENT BY 50;
+
+-- login sessions, only used with SessionPersist=true; TokenDigest is the SHA-256 of the token, ExpiresAt epoch millis
+CREATE TABLE Sessions (
+    TokenDigest varchar(64),
+    Role varchar(16),
     Username varchar(255),
-    Salt BINARY(16),
-    Hash BINARY(16),
-    PRIMARY KEY (Username)
-);
\ No newline at end of file
+    ExpiresAt bigint,
+    PRIMARY KEY (TokenDigest)
+);
+
+-- change feed between Scheduler instances, only used with ChangeFeed=jdbc (see JdbcChangeFeed);
+-- Origin identifies the writing instance, CreatedAt is epoch millis
+CREATE SEQUENCE ChangeLogSeq START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE ChangeLog (
+    Seq bigint,
+    Origin varchar(36),
+    Kind varchar(32),
+    Subject varchar(255),
+    Time date,
+    CreatedAt bigint,
+    PRIMARY KEY (Seq)
+);
@@ -1,46 +1,100 @@
 package scheduler;
 
+import scheduler.auth.LoginThrottle;
+import scheduler.auth.SessionStore;
+import scheduler.bulk.AvailabilityLoader;
+import scheduler.bulk.UserImporter;
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineInventory;
+import scheduler.db.CachedStatement;
 import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+import scheduler.db.migration.MigrationRunner;
+import scheduler.feed.ChangeFeedManager;
+import scheduler.model.Appointment;
 import scheduler.model.Caregiver;
 import scheduler.model.Patient;
 import scheduler.model.Vaccine;
+import scheduler.reservation.CaregiverLoad;
+import scheduler.reservation.ReservationEngine;
+import scheduler.reservation.Waitlist;
+import scheduler.util.HashSpec;
 import scheduler.util.Util;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 public class Scheduler {
 
-    // objects to keep track of the currently logged-in user
-    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
-    //       since only one user can be logged-in at a time
-    private static Caregiver currentCaregiver = null;
-    private static Patient currentPatient = null;
+    // longest date range search_caregiver_schedule answers in one go
+    private static final int MAX_SEARCH_DAYS = 366;
+    // rows show_appointments asks the driver for per round trip
+    private static final int APPOINTMENT_FETCH_SIZE = Math.max(1, Util.getIntSetting("AppointmentFetchSize", 500));
 
     public static void main(String[] args) {
-        // printing greetings text
-        System.out.println();
-        System.out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
-        System.out.println("*** Please enter one of the following commands ***");
-        System.out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
-        System.out.println("> create_caregiver <username> <password>");
-        System.out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
-        System.out.println("> login_caregiver <username> <password>");
-        System.out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
-        System.out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
-        System.out.println("> upload_availability <date>");
-        System.out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
-        System.out.println("> add_doses <vaccine> <number>");
-        System.out.println("> show_appointments");  // TODO: implement show_appointments (Part 2)
-        System.out.println("> logout");  // TODO: implement logout (Part 2)
-        System.out.println("> quit");
-        System.out.println();
+        // bring an existing database up to the current schema; MigrateOnStartup=false leaves that to an operator
+        if (!"false".equalsIgnoreCase(Util.getSetting("MigrateOnStartup"))) {
+            try {
+                new MigrationRunner(System.out::println).migrate();
+            } catch (SQLException e) {
+                System.out.println("Could not bring the schema up to date: " + e.getMessage());
+            }
+        }
+
+        // settle the password hash spec now, so a HashCalibrateMs calibration never delays the first login
+        HashSpec.current();
+
+        // warm the in-memory caregiver availability index and vaccine inventory;
+        // if the database is unreachable they load on first use
+        try {
+            AvailabilityIndex.getInstance().start();
+            VaccineInventory.getInstance().start();
+            CaregiverLoad.getInstance().start();
+        } catch (SQLException e) {
+            System.out.println("Could not load caregiver availabilities and vaccines, will retry on first use");
+        }
+        // with ChangeFeed=jdbc, follow what other instances change
+        ChangeFeedManager.getInstance().start();
+
+        // --server [port] serves many users over TCP instead of a single user on stdin
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = SchedulerServer.DEFAULT_PORT;
+            if (args.length > 1) {
+                try {
+                    port = Integer.parseInt(args[1]);
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid port: " + args[1]);
+                    return;
+                }
+            }
+            try {
+                new SchedulerServer(port).serve();
+            } catch (IOException e) {
+                System.out.println("Server stopped: " + e.getMessage());
+            }
+            return;
+        }
+
+        Session session = new Session(System.out, "local");
+        printGreeting(session);
 
         // read input from user
         BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
@@ -52,264 +106,333 @@ public class Scheduler {
             } catch (IOException e) {
                 System.out.println("Please try again!");
             }
-            // split the user input by spaces
-            String[] tokens = response.split(" ");
-            // check if input exists
-            if (tokens.length == 0) {
-                System.out.println("Please try again!");
-                continue;
+            // end of input behaves like quit
+            if (response == null) {
+                response = "quit";
             }
-            // determine which operation to perform
-            String operation = tokens[0];
-            if (operation.equals("create_patient")) {
-                createPatient(tokens);
-            } else if (operation.equals("create_caregiver")) {
-                createCaregiver(tokens);
-            } else if (operation.equals("login_patient")) {
-                loginPatient(tokens);
-            } else if (operation.equals("login_caregiver")) {
-                loginCaregiver(tokens);
-            } else if (operation.equals("search_caregiver_schedule")) {
-                searchCaregiverSchedule(tokens);
-            } else if (operation.equals("reserve")) {
-                reserve(tokens);
-            } else if (operation.equals("upload_availability")) {
-                uploadAvailability(tokens);
-            } else if (operation.equals("cancel")) {
-                cancel(tokens);
-            } else if (operation.equals("add_doses")) {
-                addDoses(tokens);
-            } else if (operation.equals("show_appointments")) {
-                showAppointments(tokens);
-            } else if (operation.equals("logout")) {
-                logout(tokens);
-            } else if (operation.equals("quit")) {
-                System.out.println("Bye!");
+            if (!execute(session, response)) {
                 return;
-            } else {
-                System.out.println("Invalid operation name!");
             }
         }
     }
 
+    public static void printGreeting(Session session) {
+        // printing greetings text
+        session.println();
+        session.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
+        session.println("*** Please enter one of the following commands ***");
+        session.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
+        session.println("> create_caregiver <username> <password>");
+        session.println("> import_users <path>");
+        session.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
+        session.println("> login_caregiver <username> <password>");
+        session.println("> resume <session_token>");
+        session.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
+        session.println("> search_caregiver_schedule <from> <to> [vaccine]");
+        session.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
+        session.println("> reserve_earliest <vaccine> [from_date]");
+        session.println("> join_waitlist <from> <to> <vaccine>");
+        session.println("> leave_waitlist");
+        session.println("> upload_availability <date>");
+        session.println("> upload_availability_range <start> <end> [weekdays]");
+        session.println("> upload_availability_file <path>");
+        session.println("> cancel <appointment_id>");
+        session.println("> add_doses <vaccine> <number> [<vaccine> <number> ...]");
+        session.println("> add_doses_file <path>");
+        session.println("> show_appointments [--after <id>] [--limit <n>] [--from <date>] [--to <date>]");  // TODO: implement show_appointments (Part 2)
+        session.println("> logout");  // TODO: implement logout (Part 2)
+        session.println("> quit");
+        session.println();
+    }
+
+    // Runs one command line for the given session; returns false once the session asked to quit.
+    // Used by both the REPL and the server, so commands behave the same everywhere.
+    public static boolean execute(Session session, String line) {
+        // split the user input by spaces
+        String[] tokens = line.split(" ");
+        // check if input exists
+        if (tokens.length == 0) {
+            session.println("Please try again!");
+            return true;
+        }
+        // determine which operation to perform
+        String operation = tokens[0];
+        if (operation.equals("create_patient")) {
+            createPatient(session, tokens);
+        } else if (operation.equals("create_caregiver")) {
+            createCaregiver(session, tokens);
+        } else if (operation.equals("import_users")) {
+            importUsers(session, tokens);
+        } else if (operation.equals("login_patient")) {
+            loginPatient(session, tokens);
+        } else if (operation.equals("login_caregiver")) {
+            loginCaregiver(session, tokens);
+        } else if (operation.equals("resume")) {
+            resume(session, tokens);
+        } else if (operation.equals("search_caregiver_schedule")) {
+            searchCaregiverSchedule(session, tokens);
+        } else if (operation.equals("reserve")) {
+            reserve(session, tokens);
+        } else if (operation.equals("reserve_earliest")) {
+            reserveEarliest(session, tokens);
+        } else if (operation.equals("join_waitlist")) {
+            joinWaitlist(session, tokens);
+        } else if (operation.equals("leave_waitlist")) {
+            leaveWaitlist(session, tokens);
+        } else if (operation.equals("upload_availability")) {
+            uploadAvailability(session, tokens);
+        } else if (operation.equals("upload_availability_range")) {
+            uploadAvailabilityRange(session, tokens);
+        } else if (operation.equals("upload_availability_file")) {
+            uploadAvailabilityFile(session, tokens);
+        } else if (operation.equals("cancel")) {
+            cancel(session, tokens);
+        } else if (operation.equals("add_doses")) {
+            addDoses(session, tokens);
+        } else if (operation.equals("add_doses_file")) {
+            addDosesFile(session, tokens);
+        } else if (operation.equals("show_appointments")) {
+            showAppointments(session, tokens);
+        } else if (operation.equals("logout")) {
+            logout(session, tokens);
+        } else if (operation.equals("quit")) {
+            session.println("Bye!");
+            return false;
+        } else {
+            session.println("Invalid operation name!");
+        }
+        return true;
+    }
+
+    // Called when a session's connection ends; the login token survives for resume, but a waitlist request this
+    // session made has nobody left to tell, so it is withdrawn.
+    public static void disconnected(Session session) {
+        leaveWaitlistQuietly(session);
+    }
+
+    private static void leaveWaitlistQuietly(Session session) {
+        Patient patient = session.getCurrentPatient();
+        if (patient != null) {
+            Waitlist.getInstance().leave(patient.getUsername(), session);
+        }
+    }
+
     // TODO: Part 1
-    private static void createPatient(String[] tokens) {
+    private static void createPatient(Session session, String[] tokens) {
         // create_patient <username> <password>
         // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if(tokens.length != 3) {
-            System.out.println("Create patient failed");
+            session.println("Create patient failed");
             return;
         }
         String username = tokens[1];
         String password = tokens[2];
 
-        // check 2: check if the username has been taken already
-        if(usernameExistsPatient(username)) {
-            System.out.println("Username taken, try again");
-            return;
-        }
-
-        // check 3: check if password is strong
-        if(weakPassword(password)) {
-            System.out.println("Please choose a stronger password");
+        // check 2: check if password is strong
+        if(weakPassword(session, password)) {
+            session.println("Please choose a stronger password");
             return;
         }
 
         byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
+        HashSpec spec = HashSpec.current();
+        byte[] hash = Util.generateHash(password, salt, spec);
         // create the patient
         try {
-            Patient patient = new Patient.PatientBuilder(username, salt, hash).build();
-            // save to patient information to our database
-            patient.saveToDB();
-            System.out.println("Created user " + username);
+            Patient patient = new Patient.PatientBuilder(username, salt, hash, spec).build();
+            // save to patient information to our database; check 3: the insert fails if the username is taken
+            if (!patient.saveToDB()) {
+                session.println("Username taken, try again");
+                return;
+            }
+            session.println("Created user " + username);
         } catch (SQLException e) {
-            System.out.println("Create patient failed");
+            session.println("Create patient failed");
             e.printStackTrace();
         }
     }
 
-    private static boolean weakPassword(String password) {
-        if (password.length() < 8) {
-            System.out.println("Please ensure password is at least 8 characters long");
-            return true;
-        }
-        if (!(password.contains("!") | password.contains("@") | password.contains("#") | password.contains("?"))) {
-            System.out.println("Please use one of the following special characters: !, @, #, ?");
-            return true;
-        }
-
-        boolean hasUpperCase = false;
-        boolean hasLowerCase = false;
-        boolean hasDigit = false;
-        for (char c : password.toCharArray()) {
-            if (Character.isUpperCase(c)) {
-                hasUpperCase = true;
-            } else if (Character.isLowerCase(c)) {
-                hasLowerCase = true;
-            } else if (Character.isDigit(c)) {
-                hasDigit = true;
-            }
-        }
-
-
-        if (!hasLowerCase) {
-            System.out.println("Please include at least 1 lower case letter");
-            return true;
-        }
-        if (!hasUpperCase) {
-            System.out.println("Please include at least 1 upper case letter");
-            return true;
-        }
-        if (!hasDigit) {
-            System.out.println("Please include at least 1 number");
+    private static boolean weakPassword(Session session, String password) {
+        String problem = Util.passwordWeakness(password);
+        if (problem != null) {
+            session.println(problem);
             return true;
         }
         return false;
     }
 
-    private static boolean usernameExistsPatient(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Patients WHERE Username = ?";
-        try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
-        } catch (SQLException e) {
-            System.out.println("Create patient failed");
-            e.printStackTrace();
-        } finally {
-            cm.closeConnection();
-        }
-        return true;
-    }
-
-    private static void createCaregiver(String[] tokens) {
+    private static void createCaregiver(Session session, String[] tokens) {
         // create_caregiver <username> <password>
         // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Failed to create user.");
+            session.println("Failed to create user.");
             return;
         }
         String username = tokens[1];
         String password = tokens[2];
-        // check 2: check if the username has been taken already
-        if (usernameExistsCaregiver(username)) {
-            System.out.println("Username taken, try again!");
-            return;
-        }
         byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
+        HashSpec spec = HashSpec.current();
+        byte[] hash = Util.generateHash(password, salt, spec);
         // create the caregiver
         try {
-            Caregiver caregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build(); 
-            // save to caregiver information to our database
-            caregiver.saveToDB();
-            System.out.println("Created user " + username);
-        } catch (SQLException e) {
-            System.out.println("Failed to create user.");
-            e.printStackTrace();
-        }
-    }
-
-    private static boolean usernameExistsCaregiver(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Caregivers WHERE Username = ?";
-        try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            Caregiver caregiver = new Caregiver.CaregiverBuilder(username, salt, hash, spec).build(); 
+            // save to caregiver information to our database; check 2: the insert fails if the username is taken
+            if (!caregiver.saveToDB()) {
+                session.println("Username taken, try again!");
+                return;
+            }
+            session.println("Created user " + username);
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            session.println("Failed to create user.");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return true;
     }
 
     // TODO: Part 1
-    private static void loginPatient(String[] tokens) {
+    private static void loginPatient(Session session, String[] tokens) {
         // login_patient <username> <password>
         // check 1: if someone's already logged-in, they need to log out first
-        if (currentPatient != null || currentCaregiver != null) {
-            System.out.println("User already logged in, try again");
+        if (session.isLoggedIn()) {
+            session.println("User already logged in, try again");
             return;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Login patient failed");
+            session.println("Login patient failed");
             return;
         }
         String username = tokens[1];
         String password = tokens[2];
 
+        // check 3: refuse right away while this username or client has too many recent failures
+        LoginThrottle throttle = LoginThrottle.getInstance();
+        if (!throttle.allow(SessionStore.PATIENT, username, session.getSource())) {
+            session.println("Too many failed logins, try again later");
+            return;
+        }
+
         Patient patient = null;
         try {
             patient = new Patient.PatientGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Login patient failed");
+            session.println("Login patient failed");
             e.printStackTrace();
+            return;
         }
         // check if the login was successful
         if (patient == null) {
-            System.out.println("Login patient failed");
+            throttle.recordFailure(SessionStore.PATIENT, username, session.getSource());
+            session.println("Login patient failed");
         } else {
-            System.out.println("Logged in as " + username);
-            currentPatient = patient;
+            session.println("Logged in as " + username);
+            session.setCurrentPatient(patient);
+            issueToken(session);
         }
     }
 
-    private static void loginCaregiver(String[] tokens) {
+    private static void loginCaregiver(Session session, String[] tokens) {
         // login_caregiver <username> <password>
         // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in.");
+        if (session.isLoggedIn()) {
+            session.println("User already logged in.");
             return;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Login failed.");
+            session.println("Login failed.");
             return;
         }
         String username = tokens[1];
         String password = tokens[2];
 
+        // check 3: refuse right away while this username or client has too many recent failures
+        LoginThrottle throttle = LoginThrottle.getInstance();
+        if (!throttle.allow(SessionStore.CAREGIVER, username, session.getSource())) {
+            session.println("Too many failed logins, try again later");
+            return;
+        }
+
         Caregiver caregiver = null;
         try {
             caregiver = new Caregiver.CaregiverGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Login failed.");
+            session.println("Login failed.");
             e.printStackTrace();
+            return;
         }
         // check if the login was successful
         if (caregiver == null) {
-            System.out.println("Login failed.");
+            throttle.recordFailure(SessionStore.CAREGIVER, username, session.getSource());
+            session.println("Login failed.");
         } else {
-            System.out.println("Logged in as: " + username);
-            currentCaregiver = caregiver;
+            session.println("Logged in as: " + username);
+            session.setCurrentCaregiver(caregiver);
+            issueToken(session);
+        }
+    }
+
+    // hands the client a token it can use to log back in with resume after reconnecting
+    private static void issueToken(Session session) {
+        try {
+            SessionStore store = SessionStore.getInstance();
+            String token = session.getCurrentPatient() != null
+                    ? store.issue(session.getCurrentPatient())
+                    : store.issue(session.getCurrentCaregiver());
+            session.setToken(token);
+            session.println("Session token: " + token);
+        } catch (SQLException e) {
+            // the login itself worked; the user just has to log in with the password next time
+            e.printStackTrace();
         }
     }
 
+    private static void resume(Session session, String[] tokens) {
+        // resume <token>
+        if (session.isLoggedIn()) {
+            session.println("User already logged in, try again");
+            return;
+        }
+        if (tokens.length != 2) {
+            session.println("Please try again");
+            return;
+        }
+        SessionStore.Entry entry;
+        try {
+            entry = SessionStore.getInstance().resume(tokens[1]);
+        } catch (SQLException e) {
+            session.println("Resume failed");
+            e.printStackTrace();
+            return;
+        }
+        if (entry == null) {
+            session.println("Session expired, please login again");
+            return;
+        }
+        if (entry.getPatient() != null) {
+            session.setCurrentPatient(entry.getPatient());
+        } else {
+            session.setCurrentCaregiver(entry.getCaregiver());
+        }
+        session.setToken(tokens[1]);
+        session.println("Logged in as " + entry.getUsername());
+    }
+
     // TODO: Part 2
-    private static void searchCaregiverSchedule(String[] tokens) {
+    private static void searchCaregiverSchedule(Session session, String[] tokens) {
         // search_caregiver_schedule <date>
         // check 1: make sure the user is logged in
-        if (currentPatient == null && currentCaregiver == null) {
-            System.out.println("Please login first");
+        if (!session.isLoggedIn()) {
+            session.println("Please login first");
+            return;
+        }
+        // a date range gets per-day counts instead of names
+        if (tokens.length == 3 || tokens.length == 4) {
+            searchCaregiverScheduleRange(session, tokens);
             return;
         }
         // check 2: the length for tokens need to be exactly 2 to include all information (with operation name)
         if (tokens.length != 2) {
-            System.out.println("Please try again");
+            session.println("Please try again");
             return;
         }
         String dateStr = tokens[1];
@@ -318,70 +441,104 @@ public class Scheduler {
         try {
             time = Date.valueOf(dateStr);
         } catch (IllegalArgumentException e) {
-            System.out.println("Please try again");
+            session.println("Please try again");
             return;
         }
 
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
         try {
-            // Query to get available caregivers
-            String queryCaregivers = "SELECT Username FROM Availabilities WHERE Time = ? ORDER BY Username";
-            PreparedStatement statement = con.prepareStatement(queryCaregivers);
-            statement.setDate(1, time);
-            ResultSet resultSet = statement.executeQuery();
+            // Available caregivers come from the in-memory index
+            NavigableSet<String> caregivers = AvailabilityIndex.getInstance().freeCaregivers(time);
 
             // Check if there are available caregivers
-            if (!resultSet.next()) {
-                System.out.println("No caregiver is available");
+            if (caregivers.isEmpty()) {
+                session.println("No caregiver is available");
                 return;
             }
 
             // Print available caregivers
-            do {
-                System.out.println(resultSet.getString("Username"));
-            } while (resultSet.next());
-
-            // Query to get available vaccines and doses
-            String queryVaccines = "SELECT Name, Doses FROM Vaccines ORDER BY Name";
-            statement = con.prepareStatement(queryVaccines);
-            resultSet = statement.executeQuery();
-
-            while (resultSet.next()) {
-                String vaccineName = resultSet.getString("Name");
-                int doses = resultSet.getInt("Doses");
-                System.out.println(vaccineName + " " + doses);
+            for (String caregiver : caregivers) {
+                session.println(caregiver);
+            }
+
+            // Available vaccines and doses come from the in-memory inventory
+            for (Map.Entry<String, Integer> vaccine : VaccineInventory.getInstance().snapshot().entrySet()) {
+                session.println(vaccine.getKey() + " " + vaccine.getValue());
             }
         } catch (SQLException e) {
-            System.out.println("Please try again");
+            session.println("Please try again");
+            e.printStackTrace();
+        }
+    }
+
+    private static void searchCaregiverScheduleRange(Session session, String[] tokens) {
+        // search_caregiver_schedule <from> <to> [vaccine]
+        // prints how many caregivers are free on each date that has any, then the doses left;
+        // everything comes from the in-memory index and inventory, whatever the length of the range
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = Date.valueOf(tokens[1]).toLocalDate();
+            to = Date.valueOf(tokens[2]).toLocalDate();
+        } catch (IllegalArgumentException e) {
+            session.println("Please try again");
+            return;
+        }
+        // check 3: the range must run forwards and stay short enough to read
+        if (to.isBefore(from) || ChronoUnit.DAYS.between(from, to) >= MAX_SEARCH_DAYS) {
+            session.println("Please choose a range of at most " + MAX_SEARCH_DAYS + " days");
+            return;
+        }
+        try {
+            SortedMap<String, Integer> doses = VaccineInventory.getInstance().snapshot();
+            if (tokens.length == 4) {
+                // check 4: the vaccine must exist
+                Integer count = doses.get(tokens[3]);
+                if (count == null) {
+                    session.println("Vaccine " + tokens[3] + " does not exist");
+                    return;
+                }
+                doses = new TreeMap<>(Map.of(tokens[3], count));
+            }
+
+            SortedMap<LocalDate, Integer> counts = AvailabilityIndex.getInstance().freeCounts(from, to);
+            if (counts.isEmpty()) {
+                session.println("No caregiver is available");
+                return;
+            }
+            for (Map.Entry<LocalDate, Integer> day : counts.entrySet()) {
+                session.println(day.getKey() + " " + day.getValue() +
+                        (day.getValue() == 1 ? " caregiver" : " caregivers"));
+            }
+            for (Map.Entry<String, Integer> vaccine : doses.entrySet()) {
+                session.println(vaccine.getKey() + " " + vaccine.getValue());
+            }
+        } catch (SQLException e) {
+            session.println("Please try again");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     }
 
 
     // TODO: Part 2
-    private static void reserve(String[] tokens) {
+    private static void reserve(Session session, String[] tokens) {
         // reserve <date> <vaccine>
         // date: yyyy-mm-dd
 
         // check 1: make sure the user is logged in
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first");
+        if (!session.isLoggedIn()) {
+            session.println("Please login first");
             return;
         }
 
         // check 2: check if the logged-in user is a patient (since patients only use this function)
-        if (currentPatient == null) {
-            System.out.println("Please login as a patient");
+        if (session.getCurrentPatient() == null) {
+            session.println("Please login as a patient");
             return;
         }
 
         // check 3: the length for tokens need to be exactly 3 to include all information (with operation name)
         if (tokens.length != 3) {
-            System.out.println("Please try again");
+            session.println("Please try again");
             return;
         }
 
@@ -392,237 +549,604 @@ public class Scheduler {
         // yyyy-mm-dd
         // 0123456789
         if (date.indexOf("-") != 4) {
-            System.out.println("Please try again");
+            session.println("Please try again");
             return;
         }
 
         // check 5: check if order is [date, vaccine]
         if(!tokens[1].contains("-") | tokens[2].contains("-")) {
-            System.out.println("Please try again");
+            session.println("Please try again");
             return;
         }
 
-        // Connect to the database
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+        try {
+            ReservationEngine.Result result = ReservationEngine.getInstance()
+                    .reserve(session.getCurrentPatient().getUsername(), Date.valueOf(date), vaccineName);
+            switch (result.getStatus()) {
+                case RESERVED:
+                    Appointment appointment = result.getAppointment();
+                    session.println("Appointment ID " + appointment.getAppointmentId() +
+                            ", Caregiver username " + appointment.getCaregiverUsername());
+                    break;
+                case NO_CAREGIVER:
+                    session.println("No caregiver is available");
+                    break;
+                case NO_DOSES:
+                    session.println("Not enough available doses");
+                    break;
+                default:
+                    session.println("Please try again");
+                    break;
+            }
+        } catch (IllegalArgumentException e) {
+            session.println("Please try again");
+        } catch (SQLException e) {
+            session.println("Please try again");
+            e.printStackTrace();
+        }
+    }
 
+    private static void reserveEarliest(Session session, String[] tokens) {
+        // reserve_earliest <vaccine> [from_date]
+        // books the first date, today or from_date onwards, on which a caregiver is free
+        // check 1: check if the logged-in user is a patient
+        if (session.getCurrentPatient() == null) {
+            session.println("Please login as a patient");
+            return;
+        }
+        // check 2: the operation name must be followed by the vaccine and optionally a date
+        if (tokens.length != 2 && tokens.length != 3) {
+            session.println("Please try again");
+            return;
+        }
+        String vaccineName = tokens[1];
+        LocalDate from = LocalDate.now();
         try {
-            // Check 6: if there are available caregivers for the given date
-            String checkAvailability = "SELECT Username FROM Availabilities WHERE Time = ? AND Username NOT IN (SELECT caregiverUsername FROM Appointments WHERE Time = ?) ORDER BY Username ASC";
-            PreparedStatement checkAvailabilityStmt = con.prepareStatement(checkAvailability);
-            checkAvailabilityStmt.setDate(1, Date.valueOf(date));
-            checkAvailabilityStmt.setDate(2, Date.valueOf(date));
-            ResultSet caregiverResult = checkAvailabilityStmt.executeQuery();
-
-            if (!caregiverResult.next()) {
-                System.out.println("No caregiver is available");
-                return;
+            if (tokens.length == 3) {
+                from = Date.valueOf(tokens[2]).toLocalDate();
             }
+            ReservationEngine.Result result = ReservationEngine.getInstance()
+                    .reserveEarliest(session.getCurrentPatient().getUsername(), from, null, vaccineName);
+            switch (result.getStatus()) {
+                case RESERVED:
+                    Appointment appointment = result.getAppointment();
+                    session.println("Appointment ID " + appointment.getAppointmentId() +
+                            ", Caregiver username " + appointment.getCaregiverUsername() +
+                            ", Date " + appointment.getTime());
+                    break;
+                case NO_CAREGIVER:
+                    session.println("No caregiver is available on or after " + from);
+                    break;
+                case NO_DOSES:
+                    session.println("Not enough available doses");
+                    break;
+                default:
+                    session.println("Please try again");
+                    break;
+            }
+        } catch (IllegalArgumentException e) {
+            session.println("Please try again");
+        } catch (SQLException e) {
+            session.println("Please try again");
+            e.printStackTrace();
+        }
+    }
 
-            // Get the available caregiver
-            String caregiverUsername = caregiverResult.getString("Username");
+    private static void joinWaitlist(Session session, String[] tokens) {
+        // join_waitlist <from> <to> <vaccine>
+        // books the first caregiver and dose that turn up between from and to, and tells the patient here;
+        // the request is withdrawn when this session logs out or disconnects
+        // check 1: check if the logged-in user is a patient
+        if (session.getCurrentPatient() == null) {
+            session.println("Please login as a patient");
+            return;
+        }
+        // check 2: the length for tokens need to be exactly 4 to include all information (with operation name)
+        if (tokens.length != 4) {
+            session.println("Please try again");
+            return;
+        }
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = Date.valueOf(tokens[1]).toLocalDate();
+            to = Date.valueOf(tokens[2]).toLocalDate();
+        } catch (IllegalArgumentException e) {
+            session.println("Please try again");
+            return;
+        }
+        // check 3: the range must run forwards and not be over already
+        if (to.isBefore(from) || to.isBefore(LocalDate.now())) {
+            session.println("Please choose a range that has not passed yet");
+            return;
+        }
+        String vaccineName = tokens[3];
+        if (Waitlist.getInstance().join(session.getCurrentPatient().getUsername(), from, to, vaccineName,
+                session, session::println)) {
+            session.println("Added to the waitlist for " + vaccineName + " between " + from + " and " + to);
+        } else {
+            session.println("The waitlist is full, please try again later");
+        }
+    }
 
-            // Check 7: if there are enough vaccine doses available
-            String checkVaccine = "SELECT Doses FROM Vaccines WHERE Name = ?";
-            PreparedStatement checkVaccineStmt = con.prepareStatement(checkVaccine);
-            checkVaccineStmt.setString(1, vaccineName);
-            ResultSet vaccineResult = checkVaccineStmt.executeQuery();
+    private static void leaveWaitlist(Session session, String[] tokens) {
+        // leave_waitlist
+        if (session.getCurrentPatient() == null) {
+            session.println("Please login as a patient");
+            return;
+        }
+        if (Waitlist.getInstance().leave(session.getCurrentPatient().getUsername())) {
+            session.println("Removed from the waitlist");
+        } else {
+            session.println("You are not on the waitlist");
+        }
+    }
 
-            if (!vaccineResult.next()) {
-                System.out.println("Please try again");
-                return;
-            }
+    private static void uploadAvailability(Session session, String[] tokens) {
+        // upload_availability <date>
+        // check 1: check if the current logged-in user is a caregiver
+        if (session.getCurrentCaregiver() == null) {
+            session.println("Please login as a caregiver first!");
+            return;
+        }
+        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
+        if (tokens.length != 2) {
+            session.println("Please try again!");
+            return;
+        }
+        String date = tokens[1];
+        try {
+            Date d = Date.valueOf(date);
+            session.getCurrentCaregiver().uploadAvailability(d);
+            Waitlist.getInstance().capacityAdded();
+            session.println("Availability uploaded!");
+        } catch (IllegalArgumentException e) {
+            session.println("Please enter a valid date!");
+        } catch (SQLException e) {
+            session.println("Error occurred when uploading availability");
+            e.printStackTrace();
+        }
+    }
 
-            int availableDoses = vaccineResult.getInt("Doses");
-            if (availableDoses <= 0) {
-                System.out.println("Not enough available doses");
+    private static void uploadAvailabilityRange(Session session, String[] tokens) {
+        // upload_availability_range <start> <end> [weekdays]
+        // weekdays is a comma separated list such as mon,wed,fri; every day of the week if omitted
+        // check 1: check if the current logged-in user is a caregiver
+        if (session.getCurrentCaregiver() == null) {
+            session.println("Please login as a caregiver first!");
+            return;
+        }
+        // check 2: the length for tokens need to be 3 or 4 to include all information (with the operation name)
+        if (tokens.length != 3 && tokens.length != 4) {
+            session.println("Please try again!");
+            return;
+        }
+        Date start;
+        Date end;
+        try {
+            start = Date.valueOf(tokens[1]);
+            end = Date.valueOf(tokens[2]);
+        } catch (IllegalArgumentException e) {
+            session.println("Please enter a valid date!");
+            return;
+        }
+        // check 3: the range must not be reversed
+        if (end.before(start)) {
+            session.println("Please try again!");
+            return;
+        }
+        Set<DayOfWeek> weekdays = EnumSet.allOf(DayOfWeek.class);
+        if (tokens.length == 4) {
+            weekdays = parseWeekdays(tokens[3]);
+            if (weekdays == null) {
+                session.println("Please enter weekdays like mon,wed,fri");
                 return;
             }
+        }
+        try {
+            AvailabilityLoader.Summary summary = session.getCurrentCaregiver()
+                    .uploadAvailabilityRange(start, end, weekdays);
+            Waitlist.getInstance().capacityAdded();
+            session.println(summary.toString());
+        } catch (SQLException e) {
+            session.println("Error occurred when uploading availability");
+            e.printStackTrace();
+        }
+    }
 
-            // Get the current maximum appointmentID
-            String getMaxAppointmentId = "SELECT MAX(appointmentID) AS maxId FROM Appointments";
-            PreparedStatement getMaxIdStmt = con.prepareStatement(getMaxAppointmentId);
-            ResultSet maxIdResult = getMaxIdStmt.executeQuery();
-
-            int newAppointmentId = 1; // default to 1 if there are no existing appointments
-            if (maxIdResult.next()) {
-                newAppointmentId = maxIdResult.getInt("maxId") + 1;
+    // parses "mon,tue,..." into a set of days, or returns null if any name is not recognised
+    private static Set<DayOfWeek> parseWeekdays(String list) {
+        Set<DayOfWeek> weekdays = EnumSet.noneOf(DayOfWeek.class);
+        for (String name : list.split(",")) {
+            DayOfWeek match = null;
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if (day.name().substring(0, 3).equalsIgnoreCase(name.trim())) {
+                    match = day;
+                }
             }
+            if (match == null) {
+                return null;
+            }
+            weekdays.add(match);
+        }
+        return weekdays;
+    }
 
-            // Reserve an appointment with the new appointmentID
-            String reserveAppointment = "INSERT INTO Appointments (appointmentID, patientUsername, caregiverUsername, vaccineName, Time) VALUES (?, ?, ?, ?, ?)";
-            PreparedStatement reserveStmt = con.prepareStatement(reserveAppointment);
-            reserveStmt.setInt(1, newAppointmentId);
-            reserveStmt.setString(2, currentPatient.getUsername());
-            reserveStmt.setString(3, caregiverUsername);
-            reserveStmt.setString(4, vaccineName);
-            reserveStmt.setDate(5, Date.valueOf(date));
-            reserveStmt.executeUpdate();
-
-            // Mark the caregiver as unavailable for the given date
-            String removeAvailability = "DELETE FROM Availabilities WHERE Username = ? AND Time = ?";
-            PreparedStatement removeAvailabilityStmt = con.prepareStatement(removeAvailability);
-            removeAvailabilityStmt.setString(1, caregiverUsername);
-            removeAvailabilityStmt.setDate(2, Date.valueOf(date));
-            removeAvailabilityStmt.executeUpdate();
-
-            // Update the number of available doses
-            String updateVaccine = "UPDATE Vaccines SET Doses = Doses - 1 WHERE Name = ?";
-            PreparedStatement updateVaccineStmt = con.prepareStatement(updateVaccine);
-            updateVaccineStmt.setString(1, vaccineName);
-            updateVaccineStmt.executeUpdate();
-
-            System.out.println("Appointment ID " + newAppointmentId + ", Caregiver username " + caregiverUsername);
-
+    private static void uploadAvailabilityFile(Session session, String[] tokens) {
+        // upload_availability_file <path>
+        // each non-empty line is "<date>" or "<date>,<caregiver>", and the caregiver must be the logged-in one (an
+        // operator loads other caregivers' days with AvailabilityLoader's main); lines starting with # are ignored;
+        // the path is relative to the import directory, see Util.resolveImportFile
+        // check 1: check if the current logged-in user is a caregiver
+        if (session.getCurrentCaregiver() == null) {
+            session.println("Please login as a caregiver first!");
+            return;
+        }
+        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
+        if (tokens.length != 2) {
+            session.println("Please try again!");
+            return;
+        }
+        // check 3: the file must be inside the import directory
+        Path file = Util.resolveImportFile(tokens[1]);
+        if (file == null) {
+            session.println("Files can only be read from the import directory");
+            return;
+        }
+        String username = session.getCurrentCaregiver().getUsername();
+        try (BufferedReader reader = Files.newBufferedReader(file);
+             AvailabilityLoader loader = new AvailabilityLoader()) {
+            String line;
+            int lineNumber = 0;
+            int invalid = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                try {
+                    Date d = Date.valueOf(fields[0].trim());
+                    // a caregiver may only publish their own availability
+                    if (fields.length > 2 || (fields.length == 2 && !fields[1].trim().equals(username))) {
+                        throw new IllegalArgumentException();
+                    }
+                    loader.add(d, username);
+                } catch (IllegalArgumentException e) {
+                    invalid++;
+                    session.println("Invalid line " + lineNumber);
+                }
+            }
+            AvailabilityLoader.Summary summary = loader.finish();
+            Waitlist.getInstance().capacityAdded();
+            session.println(summary + (invalid > 0 ? ", " + invalid + " invalid lines" : ""));
+        } catch (IOException e) {
+            session.println("Could not read " + tokens[1]);
         } catch (SQLException e) {
-            System.out.println("Please try again");
+            session.println("Error occurred when uploading availability");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     }
 
-    private static void uploadAvailability(String[] tokens) {
-        // upload_availability <date>
+    private static void importUsers(Session session, String[] tokens) {
+        // import_users <path>
+        // the file holds "role,username,password" lines, role being patient or caregiver;
+        // the path is relative to the import directory, see Util.resolveImportFile
         // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+        if (session.getCurrentCaregiver() == null) {
+            session.println("Please login as a caregiver first!");
             return;
         }
         // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
         if (tokens.length != 2) {
-            System.out.println("Please try again!");
+            session.println("Please try again!");
+            return;
+        }
+        // check 3: the file must be inside the import directory
+        Path file = Util.resolveImportFile(tokens[1]);
+        if (file == null) {
+            session.println("Files can only be read from the import directory");
             return;
         }
-        String date = tokens[1];
         try {
-            Date d = Date.valueOf(date);
-            currentCaregiver.uploadAvailability(d);
-            System.out.println("Availability uploaded!");
-        } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            UserImporter.Report report = new UserImporter(session::println).importCsv(file);
+            session.println(report.toString());
+            // every rejected line goes back to the caller, nothing is written on the server
+            for (String error : report.getErrors()) {
+                session.println(error);
+            }
+        } catch (IOException e) {
+            session.println("Could not read " + tokens[1]);
         } catch (SQLException e) {
-            System.out.println("Error occurred when uploading availability");
+            session.println("Error occurred when importing users");
             e.printStackTrace();
         }
     }
 
-    private static void cancel(String[] tokens) {
-        // TODO: Extra credit
+    private static void cancel(Session session, String[] tokens) {
+        // cancel <appointment_id>
+        // check 1: check if a user is logged in
+        Patient patient = session.getCurrentPatient();
+        Caregiver caregiver = session.getCurrentCaregiver();
+        if (patient == null && caregiver == null) {
+            session.println("Please login first");
+            return;
+        }
+        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
+        if (tokens.length != 2) {
+            session.println("Please try again!");
+            return;
+        }
+        int appointmentId;
+        try {
+            appointmentId = Integer.parseInt(tokens[1]);
+        } catch (NumberFormatException e) {
+            session.println("Please try again!");
+            return;
+        }
+        try {
+            ReservationEngine.Result result = ReservationEngine.getInstance().cancel(appointmentId,
+                    patient != null ? patient.getUsername() : null,
+                    caregiver != null ? caregiver.getUsername() : null);
+            switch (result.getStatus()) {
+                case CANCELLED:
+                    Waitlist.getInstance().capacityAdded();
+                    session.println("Appointment ID " + appointmentId + " has been cancelled");
+                    break;
+                case NO_APPOINTMENT:
+                case NOT_YOURS:
+                    // do not tell other users' appointment IDs apart from missing ones
+                    session.println("No appointment with ID " + appointmentId + " was found");
+                    break;
+                default:
+                    session.println("Please try again");
+                    break;
+            }
+        } catch (SQLException e) {
+            session.println("Please try again");
+            e.printStackTrace();
+        }
     }
 
-    private static void addDoses(String[] tokens) {
-        // add_doses <vaccine> <number>
+    private static void addDoses(Session session, String[] tokens) {
+        // add_doses <vaccine> <number> [<vaccine> <number> ...]
         // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+        if (session.getCurrentCaregiver() == null) {
+            session.println("Please login as a caregiver first!");
             return;
         }
-        // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
+        // check 2: the operation name must be followed by one or more <vaccine> <number> pairs
+        if (tokens.length < 3 || tokens.length % 2 == 0) {
+            session.println("Please try again!");
+            return;
+        }
+        // several vaccines at once go through the batched path
+        if (tokens.length > 3) {
+            Map<String, Integer> doses = new LinkedHashMap<>();
+            try {
+                for (int i = 1; i < tokens.length; i += 2) {
+                    doses.merge(tokens[i], Integer.parseInt(tokens[i + 1]), Integer::sum);
+                }
+            } catch (NumberFormatException e) {
+                session.println("Please try again!");
+                return;
+            }
+            addDosesInBulk(session, doses);
             return;
         }
         String vaccineName = tokens[1];
-        int doses = Integer.parseInt(tokens[2]);
-        Vaccine vaccine = null;
+        int doses;
         try {
-            vaccine = new Vaccine.VaccineGetter(vaccineName).get();
-        } catch (SQLException e) {
-            System.out.println("Error occurred when adding doses");
-            e.printStackTrace();
+            doses = Integer.parseInt(tokens[2]);
+        } catch (NumberFormatException e) {
+            session.println("Please try again!");
+            return;
         }
-        // check 3: if getter returns null, it means that we need to create the vaccine and insert it into the Vaccines
-        //          table
-        if (vaccine == null) {
-            try {
+        // check 3: only positive numbers of doses can be added, for new and existing vaccines alike
+        if (doses <= 0) {
+            session.println("Please try again!");
+            return;
+        }
+        try {
+            Vaccine vaccine = new Vaccine.VaccineGetter(vaccineName).get();
+            // check 4: if getter returns null, it means that we need to create the vaccine and insert it into the
+            //          Vaccines table
+            if (vaccine == null) {
                 vaccine = new Vaccine.VaccineBuilder(vaccineName, doses).build();
                 vaccine.saveToDB();
-            } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
-            }
-        } else {
-            // if the vaccine is not null, meaning that the vaccine already exists in our table
-            try {
+            } else {
+                // if the vaccine is not null, meaning that the vaccine already exists in our table
                 vaccine.increaseAvailableDoses(doses);
-            } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
             }
+        } catch (IllegalArgumentException e) {
+            session.println("Please try again!");
+            return;
+        } catch (SQLException e) {
+            session.println("Error occurred when adding doses");
+            e.printStackTrace();
+            return;
+        }
+        Waitlist.getInstance().capacityAdded();
+        session.println("Doses updated!");
+    }
+
+    private static void addDosesFile(Session session, String[] tokens) {
+        // add_doses_file <path>
+        // each non-empty line of the file is "<vaccine>,<number>"; lines starting with # are ignored
+        // the path is relative to the import directory, see Util.resolveImportFile
+        // check 1: check if the current logged-in user is a caregiver
+        if (session.getCurrentCaregiver() == null) {
+            session.println("Please login as a caregiver first!");
+            return;
+        }
+        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
+        if (tokens.length != 2) {
+            session.println("Please try again!");
+            return;
+        }
+        // check 3: the file must be inside the import directory
+        Path file = Util.resolveImportFile(tokens[1]);
+        if (file == null) {
+            session.println("Files can only be read from the import directory");
+            return;
+        }
+        Map<String, Integer> doses = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length != 2) {
+                    session.println("Invalid line " + lineNumber);
+                    return;
+                }
+                try {
+                    doses.merge(fields[0].trim(), Integer.parseInt(fields[1].trim()), Integer::sum);
+                } catch (NumberFormatException e) {
+                    session.println("Invalid line " + lineNumber);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            session.println("Could not read " + tokens[1]);
+            return;
+        }
+        addDosesInBulk(session, doses);
+    }
+
+    private static void addDosesInBulk(Session session, Map<String, Integer> doses) {
+        try {
+            Vaccine.addDosesInBulk(doses);
+            Waitlist.getInstance().capacityAdded();
+            session.println("Doses updated for " + doses.size() + " vaccines!");
+        } catch (IllegalArgumentException e) {
+            session.println("Please try again!");
+        } catch (SQLException e) {
+            session.println("Error occurred when adding doses");
+            e.printStackTrace();
         }
-        System.out.println("Doses updated!");
     }
 
     // TODO: Part 2
-    private static void showAppointments(String[] tokens) {
+    private static void showAppointments(Session session, String[] tokens) {
+        // show_appointments [--after <appointment_id>] [--limit <n>] [--from <date>] [--to <date>]
+        // Lists the user's appointments in ID order, one page at a time when --limit is given. Pages are keyset
+        // based (appointmentID > --after), so every page costs the same however long the history is, and rows are
+        // printed as they arrive from the database so memory stays flat even without a limit.
         // check 1: make sure the user is logged in
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first");
+        if (!session.isLoggedIn()) {
+            session.println("Please login first");
             return;
         }
 
-        // check 2: the length for tokens need to be exactly 1 to include all information (with the operation name)
-        if (tokens.length != 1) {
-            System.out.println("Please try again!");
+        // check 2: the operation name can only be followed by option pairs
+        if (tokens.length % 2 == 0) {
+            session.println("Please try again!");
+            return;
+        }
+        int afterId = 0;
+        int limit = Integer.MAX_VALUE;
+        Date from = Date.valueOf("0001-01-01");
+        Date to = Date.valueOf("9999-12-31");
+        // the date options as given, repeated in the hint for the next page
+        String range = "";
+        try {
+            for (int i = 1; i < tokens.length; i += 2) {
+                String value = tokens[i + 1];
+                if (tokens[i].equals("--after")) {
+                    afterId = Integer.parseInt(value);
+                } else if (tokens[i].equals("--limit")) {
+                    limit = Integer.parseInt(value);
+                } else if (tokens[i].equals("--from")) {
+                    from = Date.valueOf(value);
+                    range += " --from " + from;
+                } else if (tokens[i].equals("--to")) {
+                    to = Date.valueOf(value);
+                    range += " --to " + to;
+                } else {
+                    session.println("Please try again!");
+                    return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // also covers NumberFormatException
+            session.println("Please try again!");
+            return;
+        }
+        if (limit <= 0) {
+            session.println("Please try again!");
             return;
         }
 
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+        // caregivers see the patient of each appointment, patients see the caregiver
+        boolean caregiver = session.getCurrentCaregiver() != null;
+        Query query = caregiver ? Query.CAREGIVER_APPOINTMENTS : Query.PATIENT_APPOINTMENTS;
+        String username = caregiver
+                ? session.getCurrentCaregiver().getUsername()
+                : session.getCurrentPatient().getUsername();
+        String otherColumn = caregiver ? "patientUsername" : "caregiverUsername";
+
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = null;
 
         try {
-            if (currentCaregiver != null) {
-                // check 2: if Caregiver is logged in
-                // format is "vaccine name, date, patient id"
-                String query = "SELECT appointmentID, vaccineName, Time, patientUsername FROM Appointments WHERE caregiverUsername = ? ORDER BY AppointmentID";
-                PreparedStatement statement = con.prepareStatement(query);
-                statement.setString(1, currentCaregiver.getUsername());
-                ResultSet resultSet = statement.executeQuery();
-
-                while (resultSet.next()) {
-                    int appointmentId = resultSet.getInt("appointmentID");
-                    String vaccineName = resultSet.getString("vaccineName");
-                    Date date = resultSet.getDate("Time");
-                    String patientName = resultSet.getString("patientUsername");
-                    System.out.println(appointmentId + " " + vaccineName + " " + date + " " + patientName);
+            con = cm.borrowConnection();
+            try (CachedStatement cached = cm.prepare(con, query)) {
+                PreparedStatement statement = cached.getStatement();
+                statement.setFetchSize(APPOINTMENT_FETCH_SIZE);
+                statement.setString(1, username);
+                statement.setInt(2, afterId);
+                statement.setDate(3, from);
+                statement.setDate(4, to);
+                statement.setInt(5, limit);
+                int rows = 0;
+                int lastId = afterId;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    // format is "appointment id, vaccine name, date, patient or caregiver username"
+                    while (resultSet.next()) {
+                        lastId = resultSet.getInt("appointmentID");
+                        String vaccineName = resultSet.getString("vaccineName");
+                        Date date = resultSet.getDate("Time");
+                        String otherName = resultSet.getString(otherColumn);
+                        session.println(lastId + " " + vaccineName + " " + date + " " + otherName);
+                        rows++;
+                    }
                 }
-            } else if (currentPatient != null) {
-                // check 3: if Patient logged in
-                // format is "vaccine name, date, caregiver id"
-                String query = "SELECT appointmentID, vaccineName, Time, caregiverUsername FROM Appointments WHERE patientUsername = ? ORDER BY AppointmentID";
-                PreparedStatement statement = con.prepareStatement(query);
-                statement.setString(1, currentPatient.getUsername());
-                ResultSet resultSet = statement.executeQuery();
-
-                while (resultSet.next()) {
-                    int appointmentId = resultSet.getInt("appointmentID");
-                    String vaccineName = resultSet.getString("vaccineName");
-                    Date date = resultSet.getDate("Time");
-                    String caregiverName = resultSet.getString("caregiverUsername");
-                    System.out.println(appointmentId + " " + vaccineName + " " + date + " " + caregiverName);
+                // a full page may have more behind it
+                if (rows == limit) {
+                    session.println("More: show_appointments --after " + lastId + " --limit " + limit + range);
                 }
             }
         } catch (SQLException e) {
-            System.out.println("Please try again");
+            session.println("Please try again");
             e.printStackTrace();
         } finally {
-            cm.closeConnection();
+            cm.returnConnection(con);
         }
     }
 
-    // TODO: Part 2
-    private static void logout(String[] tokens) {
+    private static void logout(Session session, String[] tokens) {
         // check 1: if a user is logged in
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first");
+        if (!session.isLoggedIn()) {
+            session.println("Please login first");
         } else if(tokens.length != 1) {
-            System.out.println("Please try again");
+            session.println("Please try again");
         } else {
-            // log out the user
-            currentCaregiver = null;
-            currentPatient = null;
-            System.out.println("Successfully logged out");
+            // log out the user; the token and any waitlist request stop with the session
+            try {
+                SessionStore.getInstance().revoke(session.getToken());
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            leaveWaitlistQuietly(session);
+            session.logout();
+            session.println("Successfully logged out");
         }
     }
 }
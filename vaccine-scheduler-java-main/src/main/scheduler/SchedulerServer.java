@@ -0,0 +1,89 @@
+package scheduler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Serves the scheduler's line protocol to many clients at once.
+// Listens on localhost only; each connection gets its own Session and speaks exactly the same commands as the REPL,
+// e.g. `nc localhost 4140`. Sessions run on virtual threads when the JVM provides them (Java 21+), so thousands of
+// mostly idle connections cost almost nothing; older JVMs fall back to a cached pool of platform threads.
+public class SchedulerServer {
+
+    public static final int DEFAULT_PORT = 4140;
+
+    private final int port;
+    private final ExecutorService sessions = newSessionExecutor();
+    private final AtomicInteger openSessions = new AtomicInteger();
+
+    public SchedulerServer(int port) {
+        this.port = port;
+    }
+
+    // accepts clients until the process is stopped
+    public void serve() throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress())) {
+            System.out.println("Scheduler listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket client = server.accept();
+                sessions.execute(() -> handle(client));
+            }
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+
+    public int getOpenSessions() {
+        return openSessions.get();
+    }
+
+    private void handle(Socket client) {
+        openSessions.incrementAndGet();
+        Session session = null;
+        try (Socket socket = client;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            session = new Session(out, socket.getRemoteSocketAddress().toString());
+            Scheduler.printGreeting(session);
+            while (true) {
+                out.print("> ");
+                out.flush();
+                String line = in.readLine();
+                if (line == null || !Scheduler.execute(session, line.trim())) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away; the finally block cleans up after the session
+        } finally {
+            if (session != null) {
+                Scheduler.disconnected(session);
+            }
+            openSessions.decrementAndGet();
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is looked up reflectively so the code still builds on JDK 16/17
+    private static ExecutorService newSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "scheduler-session");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package scheduler;
+
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.io.PrintStream;
+
+// State of one user's conversation with the scheduler: who is logged in and where output goes.
+// The REPL runs a single session on System.out; the server creates one per client connection.
+public class Session {
+
+    private final PrintStream out;
+    // where the session comes from, e.g. "local" or the client's address
+    private final String source;
+
+    // objects to keep track of the currently logged-in user
+    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
+    //       since only one user can be logged-in at a time
+    private Caregiver currentCaregiver = null;
+    private Patient currentPatient = null;
+    // token issued by SessionStore for the logged-in user, if any
+    private String token = null;
+
+    public Session(PrintStream out, String source) {
+        this.out = out;
+        this.source = source;
+    }
+
+    public PrintStream getOut() {
+        return out;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Caregiver getCurrentCaregiver() {
+        return currentCaregiver;
+    }
+
+    public Patient getCurrentPatient() {
+        return currentPatient;
+    }
+
+    public void setCurrentCaregiver(Caregiver caregiver) {
+        this.currentCaregiver = caregiver;
+    }
+
+    public void setCurrentPatient(Patient patient) {
+        this.currentPatient = patient;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public boolean isLoggedIn() {
+        return currentCaregiver != null || currentPatient != null;
+    }
+
+    public void logout() {
+        currentCaregiver = null;
+        currentPatient = null;
+        token = null;
+    }
+
+    public void println(String line) {
+        out.println(line);
+    }
+
+    public void println() {
+        out.println();
+    }
+}
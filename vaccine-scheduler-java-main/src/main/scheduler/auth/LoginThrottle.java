@@ -0,0 +1,95 @@
+package scheduler.auth;
+
+import scheduler.util.Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Token-bucket throttle for failed logins, per username and per client source.
+//
+// Every failed login takes a token from the bucket of the username it tried and from the bucket of the address it
+// came from; while either bucket is empty, further logins for that username or from that source are refused before
+// any database lookup or password hashing happens. Successful logins cost nothing, so real users are only slowed
+// down after repeatedly mistyping, while credential stuffing runs dry after a short burst.
+//   LoginUserBurst / LoginUserPerMin       failures allowed per username at once / refilled per minute (5 / 5)
+//   LoginSourceBurst / LoginSourcePerMin   failures allowed per source at once / refilled per minute (20 / 30)
+// At most LoginThrottleKeys (default 100000) buckets are kept; the least recently used one is dropped first, which
+// at worst hands that key a fresh burst.
+public class LoginThrottle {
+
+    private static final LoginThrottle INSTANCE = new LoginThrottle();
+
+    private final double userBurst = Math.max(1, Util.getIntSetting("LoginUserBurst", 5));
+    private final double userPerMilli = Math.max(1, Util.getIntSetting("LoginUserPerMin", 5)) / 60_000.0;
+    private final double sourceBurst = Math.max(1, Util.getIntSetting("LoginSourceBurst", 20));
+    private final double sourcePerMilli = Math.max(1, Util.getIntSetting("LoginSourcePerMin", 30)) / 60_000.0;
+    private final int maxKeys = Math.max(1, Util.getIntSetting("LoginThrottleKeys", 100_000));
+
+    private final Map<String, Bucket> buckets = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+            return size() > maxKeys;
+        }
+    };
+
+    private LoginThrottle() {
+    }
+
+    public static LoginThrottle getInstance() {
+        return INSTANCE;
+    }
+
+    // false if this username or source has used up its failed attempts for now
+    public boolean allow(String role, String username, String source) {
+        long now = System.currentTimeMillis();
+        synchronized (buckets) {
+            return available(userKey(role, username), userBurst, userPerMilli, now) >= 1
+                    && available(sourceKey(source), sourceBurst, sourcePerMilli, now) >= 1;
+        }
+    }
+
+    public void recordFailure(String role, String username, String source) {
+        long now = System.currentTimeMillis();
+        synchronized (buckets) {
+            take(userKey(role, username), userBurst, userPerMilli, now);
+            take(sourceKey(source), sourceBurst, sourcePerMilli, now);
+        }
+    }
+
+    private double available(String key, double burst, double perMilli, long now) {
+        Bucket bucket = buckets.get(key);
+        return bucket == null ? burst : bucket.refill(burst, perMilli, now);
+    }
+
+    private void take(String key, double burst, double perMilli, long now) {
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(burst, now));
+        bucket.refill(burst, perMilli, now);
+        bucket.tokens = Math.max(0, bucket.tokens - 1);
+    }
+
+    private static String userKey(String role, String username) {
+        return "user:" + role + ":" + username;
+    }
+
+    private static String sourceKey(String source) {
+        // a socket address is "/host:port"; the port changes with every connection, so throttle the host
+        int port = source.lastIndexOf(':');
+        return "source:" + (source.startsWith("/") && port > 0 ? source.substring(0, port) : source);
+    }
+
+    private static class Bucket {
+        private double tokens;
+        private long updatedAt;
+
+        private Bucket(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+
+        private double refill(double burst, double perMilli, long now) {
+            tokens = Math.min(burst, tokens + (now - updatedAt) * perMilli);
+            updatedAt = now;
+            return tokens;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package scheduler.auth;
+
+import scheduler.db.CachedStatement;
+import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+import scheduler.feed.Change;
+import scheduler.feed.ChangeFeedManager;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.util.Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Opaque session tokens handed out after a successful login.
+//
+// A client that reconnects presents its token with `resume <token>` and is logged straight back in: the token
+// resolves to the user with one hash map lookup, without PBKDF2 and without reading Patients or Caregivers.
+// Tokens live in a bounded in-memory map that drops the least recently used token when full, and expire a fixed
+// time after they were issued.
+//
+// With SessionPersist=true tokens are also written to the Sessions table, so they survive a restart and work on
+// every server sharing the database. Only a SHA-256 digest of each token is stored, never the token itself.
+//   SessionMaxTokens   tokens kept in memory (default 10000)
+//   SessionTtlSec      token lifetime (default 43200)
+//   SessionPersist     also keep tokens in the Sessions table (default false)
+public class SessionStore {
+
+    public static final String PATIENT = "patient";
+    public static final String CAREGIVER = "caregiver";
+
+    private static final SessionStore INSTANCE = new SessionStore();
+
+    private final int maxTokens = Math.max(1, Util.getIntSetting("SessionMaxTokens", 10000));
+    private final long ttlMillis = Math.max(1, Util.getIntSetting("SessionTtlSec", 43200)) * 1000L;
+    private final boolean persist = "true".equalsIgnoreCase(Util.getSetting("SessionPersist"));
+
+    private final SecureRandom random = new SecureRandom();
+    // access order, so the eldest entry is the least recently used token
+    private final Map<String, Entry> tokens = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxTokens) {
+                tokensByDigest.remove(digest(eldest.getKey()));
+                return true;
+            }
+            return false;
+        }
+    };
+    // digest -> token for every token in tokens, so a revoke from another instance is one lookup;
+    // guarded by the tokens lock like tokens itself
+    private final Map<String, String> tokensByDigest = new HashMap<>();
+
+    private SessionStore() {
+        ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        reaper.scheduleWithFixedDelay(this::removeExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public static SessionStore getInstance() {
+        return INSTANCE;
+    }
+
+    public String issue(Patient patient) throws SQLException {
+        return issue(new Entry(PATIENT, patient.getUsername(), patient, null,
+                System.currentTimeMillis() + ttlMillis));
+    }
+
+    public String issue(Caregiver caregiver) throws SQLException {
+        return issue(new Entry(CAREGIVER, caregiver.getUsername(), null, caregiver,
+                System.currentTimeMillis() + ttlMillis));
+    }
+
+    // the logged-in user the token stands for, or null if it is unknown or expired
+    public Entry resume(String token) throws SQLException {
+        Entry entry;
+        synchronized (tokens) {
+            entry = tokens.get(token);
+        }
+        if (entry == null && persist) {
+            entry = load(token);
+            if (entry != null) {
+                remember(token, entry);
+            }
+        }
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return entry;
+    }
+
+    public void revoke(String token) throws SQLException {
+        if (token == null) {
+            return;
+        }
+        String tokenDigest = digest(token);
+        synchronized (tokens) {
+            tokens.remove(token);
+            tokensByDigest.remove(tokenDigest);
+        }
+        if (persist) {
+            ConnectionManager cm = ConnectionManager.getInstance();
+            Connection con = cm.borrowConnection();
+            try (CachedStatement cached = cm.prepare(con, Query.DELETE_SESSION)) {
+                PreparedStatement statement = cached.getStatement();
+                statement.setString(1, tokenDigest);
+                statement.executeUpdate();
+                // other instances may hold the token in memory
+                ChangeFeedManager.getInstance().publish(con,
+                        new Change(Change.Kind.SESSION_REVOKED, tokenDigest, null));
+            } finally {
+                cm.returnConnection(con);
+            }
+        }
+    }
+
+    // drops the token with the given digest from memory; used when another instance revoked it
+    public void forget(String tokenDigest) {
+        synchronized (tokens) {
+            String token = tokensByDigest.remove(tokenDigest);
+            if (token != null) {
+                tokens.remove(token);
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (tokens) {
+            return tokens.size();
+        }
+    }
+
+    private String issue(Entry entry) throws SQLException {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        String tokenDigest = digest(token);
+        if (persist) {
+            ConnectionManager cm = ConnectionManager.getInstance();
+            Connection con = cm.borrowConnection();
+            try (CachedStatement cached = cm.prepare(con, Query.INSERT_SESSION)) {
+                PreparedStatement statement = cached.getStatement();
+                statement.setString(1, tokenDigest);
+                statement.setString(2, entry.role);
+                statement.setString(3, entry.username);
+                statement.setLong(4, entry.expiresAt);
+                statement.executeUpdate();
+            } finally {
+                cm.returnConnection(con);
+            }
+        }
+        remember(token, tokenDigest, entry);
+        return token;
+    }
+
+    private void remember(String token, Entry entry) {
+        remember(token, digest(token), entry);
+    }
+
+    private void remember(String token, String tokenDigest, Entry entry) {
+        synchronized (tokens) {
+            tokens.put(token, entry);
+            tokensByDigest.put(tokenDigest, token);
+        }
+    }
+
+    private Entry load(String token) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (CachedStatement cached = cm.prepare(con, Query.FIND_SESSION)) {
+            PreparedStatement statement = cached.getStatement();
+            statement.setString(1, digest(token));
+            String role;
+            String username;
+            long expiresAt;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                role = resultSet.getString("Role");
+                username = resultSet.getString("Username");
+                expiresAt = resultSet.getLong("ExpiresAt");
+            }
+            // the session only needs the username; salt and hash stay with the account row
+            if (role.equals(PATIENT)) {
+                Patient patient = new Patient.PatientBuilder(username, null, null, null).build();
+                return new Entry(role, username, patient, null, expiresAt);
+            }
+            Caregiver caregiver = new Caregiver.CaregiverBuilder(username, null, null, null).build();
+            return new Entry(role, username, null, caregiver, expiresAt);
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (tokens) {
+            Iterator<Map.Entry<String, Entry>> it = tokens.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> token = it.next();
+                if (token.getValue().isExpired(now)) {
+                    tokensByDigest.remove(digest(token.getKey()));
+                    it.remove();
+                }
+            }
+        }
+        if (persist) {
+            ConnectionManager cm = ConnectionManager.getInstance();
+            Connection con = null;
+            try {
+                con = cm.borrowConnection();
+                try (CachedStatement cached = cm.prepare(con, Query.DELETE_EXPIRED_SESSIONS)) {
+                    PreparedStatement statement = cached.getStatement();
+                    statement.setLong(1, now);
+                    statement.executeUpdate();
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                cm.returnConnection(con);
+            }
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Entry {
+        private final String role;
+        private final String username;
+        private final Patient patient;
+        private final Caregiver caregiver;
+        private final long expiresAt;
+
+        private Entry(String role, String username, Patient patient, Caregiver caregiver, long expiresAt) {
+            this.role = role;
+            this.username = username;
+            this.patient = patient;
+            this.caregiver = caregiver;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        // null unless the token belongs to a patient
+        public Patient getPatient() {
+            return patient;
+        }
+
+        // null unless the token belongs to a caregiver
+        public Caregiver getCaregiver() {
+            return caregiver;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package scheduler.bench;
+
+import scheduler.db.ConnectionManager;
+import scheduler.reservation.AppointmentIdAllocator;
+import scheduler.util.HashSpec;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.function.Consumer;
+
+// Fills an empty database with a synthetic but realistically sized data set.
+//
+// At scale 1 that is 100k caregivers, 100k patients, 1M availabilities (10 open dates per caregiver spread over
+// FUTURE_DAYS days from FIRST_OPEN_DATE) and 10M past appointments. Every seeded account has the password PASSWORD.
+// Rows are inserted in batches of BATCH_SIZE, one transaction per batch.
+public class DataSeeder {
+
+    public static final String PASSWORD = "Bench#pass1";
+    public static final String[] VACCINES = {"janssen", "moderna", "novavax", "pfizer"};
+    public static final LocalDate FIRST_OPEN_DATE = LocalDate.of(2030, 1, 1);
+    public static final int FUTURE_DAYS = 365;
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int DATES_PER_CAREGIVER = 10;
+    private static final int APPOINTMENTS_PER_CAREGIVER = 100;
+    private static final LocalDate FIRST_PAST_DATE = LocalDate.of(2021, 1, 1);
+    private static final int PAST_DAYS = 9 * 365;
+
+    private final int caregivers;
+    private final int patients;
+    private final Consumer<String> progress;
+    private final Random random = new Random(414);
+
+    public DataSeeder(double scale, Consumer<String> progress) {
+        this.caregivers = Math.max(1, (int) Math.round(100_000 * scale));
+        this.patients = caregivers;
+        this.progress = progress;
+    }
+
+    public static String caregiverName(int i) {
+        return "cg" + i;
+    }
+
+    public static String patientName(int i) {
+        return "pt" + i;
+    }
+
+    public int getCaregivers() {
+        return caregivers;
+    }
+
+    public int getPatients() {
+        return patients;
+    }
+
+    public long getAvailabilities() {
+        return (long) caregivers * DATES_PER_CAREGIVER;
+    }
+
+    public long getAppointments() {
+        return (long) caregivers * APPOINTMENTS_PER_CAREGIVER;
+    }
+
+    public void seed() throws SQLException {
+        // one hash for everybody; hashing a million passwords would dominate the setup time
+        HashSpec spec = HashSpec.current();
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(PASSWORD, salt, spec);
+
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try {
+            con.setAutoCommit(false);
+            seedUsers(con, "Caregivers", caregivers, true, spec, salt, hash);
+            seedUsers(con, "Patients", patients, false, spec, salt, hash);
+            seedVaccines(con);
+            seedAvailabilities(con);
+            seedAppointments(con);
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+
+    private void seedUsers(Connection con, String table, int count, boolean caregiver, HashSpec spec, byte[] salt,
+                           byte[] hash) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(
+                "INSERT INTO " + table + " (Username, Salt, Hash, HashSpec) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < count; i++) {
+                statement.setString(1, caregiver ? caregiverName(i) : patientName(i));
+                statement.setBytes(2, salt);
+                statement.setBytes(3, hash);
+                statement.setString(4, spec.toString());
+                statement.addBatch();
+                flushEvery(con, statement, i + 1, count, table.toLowerCase());
+            }
+        }
+    }
+
+    private void seedVaccines(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement("INSERT INTO Vaccines VALUES (?, ?)")) {
+            for (String name : VACCINES) {
+                statement.setString(1, name);
+                statement.setInt(2, 1_000_000_000);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            con.commit();
+        }
+    }
+
+    private void seedAvailabilities(Connection con) throws SQLException {
+        long total = getAvailabilities();
+        long done = 0;
+        try (PreparedStatement statement = con.prepareStatement(
+                "INSERT INTO Availabilities (Time, Username) VALUES (?, ?)")) {
+            for (int i = 0; i < caregivers; i++) {
+                for (int k = 0; k < DATES_PER_CAREGIVER; k++) {
+                    // 37 is coprime with 365, so one caregiver's dates never repeat
+                    int day = (i * 7 + k * 37) % FUTURE_DAYS;
+                    statement.setDate(1, Date.valueOf(FIRST_OPEN_DATE.plusDays(day)));
+                    statement.setString(2, caregiverName(i));
+                    statement.addBatch();
+                    flushEvery(con, statement, ++done, total, "availabilities");
+                }
+            }
+        }
+    }
+
+    private void seedAppointments(Connection con) throws SQLException {
+        long total = getAppointments();
+        AppointmentIdAllocator ids = AppointmentIdAllocator.getInstance();
+        try (PreparedStatement statement = con.prepareStatement("INSERT INTO Appointments " +
+                "(Time, appointmentID, caregiverUsername, patientUsername, vaccineName) VALUES (?, ?, ?, ?, ?)")) {
+            for (long done = 1; done <= total; done++) {
+                statement.setDate(1, Date.valueOf(FIRST_PAST_DATE.plusDays(random.nextInt(PAST_DAYS))));
+                statement.setInt(2, ids.nextId(con));
+                statement.setString(3, caregiverName(random.nextInt(caregivers)));
+                statement.setString(4, patientName(random.nextInt(patients)));
+                statement.setString(5, VACCINES[random.nextInt(VACCINES.length)]);
+                statement.addBatch();
+                flushEvery(con, statement, done, total, "appointments");
+            }
+        }
+    }
+
+    private void flushEvery(Connection con, PreparedStatement statement, long done, long total, String what)
+            throws SQLException {
+        if (done % BATCH_SIZE != 0 && done != total) {
+            return;
+        }
+        statement.executeBatch();
+        con.commit();
+        if (done % (BATCH_SIZE * 100L) == 0 || done == total) {
+            progress.accept("Seeded " + done + "/" + total + " " + what);
+        }
+    }
+}
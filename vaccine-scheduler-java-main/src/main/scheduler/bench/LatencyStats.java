@@ -0,0 +1,71 @@
+package scheduler.bench;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Summary of a set of per-operation latencies, recorded in nanoseconds.
+public class LatencyStats {
+
+    private final String name;
+    private final long[] sortedNanos;
+    private final long totalNanos;
+    private final long wallNanos;
+
+    // wallNanos is the elapsed time of the whole run, which differs from the sum of latencies when ops run in parallel
+    public LatencyStats(String name, long[] nanos, long wallNanos) {
+        this.name = name;
+        this.sortedNanos = nanos.clone();
+        Arrays.sort(this.sortedNanos);
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        this.totalNanos = total;
+        this.wallNanos = wallNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCount() {
+        return sortedNanos.length;
+    }
+
+    public double getMeanMicros() {
+        return sortedNanos.length == 0 ? 0 : totalNanos / 1e3 / sortedNanos.length;
+    }
+
+    // nearest-rank percentile, e.g. percentileMicros(99.9)
+    public double percentileMicros(double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedNanos.length);
+        return sortedNanos[Math.max(0, Math.min(sortedNanos.length - 1, rank - 1))] / 1e3;
+    }
+
+    public double getMaxMicros() {
+        return sortedNanos.length == 0 ? 0 : sortedNanos[sortedNanos.length - 1] / 1e3;
+    }
+
+    public double getOpsPerSecond() {
+        return wallNanos == 0 ? 0 : sortedNanos.length * 1e9 / wallNanos;
+    }
+
+    // one JSON object on a single line, so result files diff and grep cleanly
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"benchmark\": \"%s\", \"count\": %d, \"meanUs\": %.3f, " +
+                        "\"p50Us\": %.3f, \"p90Us\": %.3f, \"p99Us\": %.3f, \"p999Us\": %.3f, \"maxUs\": %.3f, " +
+                        "\"opsPerSec\": %.1f}",
+                name, getCount(), getMeanMicros(), percentileMicros(50), percentileMicros(90),
+                percentileMicros(99), percentileMicros(99.9), getMaxMicros(), getOpsPerSecond());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%-40s n=%-7d mean=%10.1fus p50=%10.1fus p99=%10.1fus p99.9=%10.1fus %10.0f ops/s",
+                name, getCount(), getMeanMicros(), percentileMicros(50), percentileMicros(99),
+                percentileMicros(99.9), getOpsPerSecond());
+    }
+}
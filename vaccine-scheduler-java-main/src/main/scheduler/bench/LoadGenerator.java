@@ -0,0 +1,366 @@
+package scheduler.bench;
+
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineInventory;
+import scheduler.db.ConnectionManager;
+import scheduler.reservation.CaregiverLoad;
+import scheduler.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Drives the scheduler with many concurrent simulated patients and then checks that the data is still consistent.
+//
+//     java -cp <classes>:h2.jar scheduler.bench.LoadGenerator [--clients 32] [--duration 30] [--scale 0.01]
+//         [--days 7] [--doses 1000000000]
+//         [--mix create_patient=5,login_patient=10,search_caregiver_schedule=45,reserve=40] [--out load.json]
+//
+// Every client creates and logs in its own patient, then issues commands picked at random with the --mix weights
+// through Scheduler.execute, exactly as a REPL or server user would. Reservations only target the first --days open
+// dates, so clients fight over the same caregivers; --doses caps every vaccine's stock to add contention on doses.
+// The run reports latency percentiles and throughput per command, then checks the invariants:
+//   - no caregiver has two appointments on one day, or an appointment on a day they are still listed as available
+//   - no vaccine has negative doses, and every vaccine lost exactly one dose per appointment booked during the run
+//   - no appointment ID is used twice
+// The process exits with status 1 if any invariant is violated. Like BenchmarkRunner it only runs embedded.
+public class LoadGenerator {
+
+    private static final String[] COMMANDS = {"create_patient", "login_patient", "search_caregiver_schedule", "reserve"};
+
+    private final int clients;
+    private final long durationNanos;
+    private final int days;
+    private final int[] weights;
+    private final int totalWeight;
+
+    private LoadGenerator(int clients, int durationSec, int days, int[] weights) {
+        this.clients = clients;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSec);
+        this.days = Math.max(1, Math.min(days, DataSeeder.FUTURE_DAYS));
+        this.weights = weights;
+        this.totalWeight = Arrays.stream(weights).sum();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+
+        String storage = Util.getSetting("Storage");
+        if (storage != null && !storage.equalsIgnoreCase("embedded")) {
+            System.out.println("The load generator only runs against embedded storage, but Storage=" + storage);
+            System.exit(2);
+        }
+        System.setProperty("Storage", "embedded");
+
+        int[] weights = parseMix(options.getOrDefault("mix",
+                "create_patient=5,login_patient=10,search_caregiver_schedule=45,reserve=40"));
+        if (weights == null) {
+            System.out.println("--mix takes command=weight pairs for " + String.join(", ", COMMANDS));
+            System.exit(2);
+        }
+        LoadGenerator generator = new LoadGenerator(
+                Integer.parseInt(options.getOrDefault("clients", "32")),
+                Integer.parseInt(options.getOrDefault("duration", "30")),
+                Integer.parseInt(options.getOrDefault("days", "7")),
+                weights);
+
+        DataSeeder seeder = new DataSeeder(Double.parseDouble(options.getOrDefault("scale", "0.01")),
+                System.out::println);
+        try {
+            seeder.seed();
+        } catch (SQLException e) {
+            // usually the embedded driver is missing from the classpath; the message says what to add
+            System.out.println("Could not start the embedded database: " + e.getMessage());
+            System.exit(2);
+        }
+        if (options.containsKey("doses")) {
+            capDoses(Integer.parseInt(options.get("doses")));
+        }
+        Map<String, Integer> dosesBefore = doses();
+        AvailabilityIndex.getInstance().start();
+        VaccineInventory.getInstance().start();
+        CaregiverLoad.getInstance().start();
+
+        List<LatencyStats> stats = generator.run();
+
+        List<String> violations = checkInvariants(dosesBefore);
+        for (String violation : violations) {
+            System.out.println("INVARIANT VIOLATED: " + violation);
+        }
+        System.out.println(violations.isEmpty() ? "All invariants hold" : violations.size() + " invariant violations");
+        System.out.println(ConnectionManager.getInstance());
+
+        if (options.containsKey("out")) {
+            StringBuilder json = new StringBuilder("{\n  \"clients\": " + generator.clients + ",\n  \"results\": [\n");
+            for (int i = 0; i < stats.size(); i++) {
+                json.append("    ").append(stats.get(i).toJson()).append(i + 1 < stats.size() ? ",\n" : "\n");
+            }
+            json.append("  ],\n  \"violations\": ").append(violations.size()).append("\n}\n");
+            Files.writeString(Paths.get(options.get("out")), json.toString());
+        }
+        System.exit(violations.isEmpty() ? 0 : 1);
+    }
+
+    private List<LatencyStats> run() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<Client>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        for (int i = 0; i < clients; i++) {
+            Client client = new Client(i);
+            futures.add(pool.submit(() -> {
+                client.runUntil(deadline);
+                return client;
+            }));
+        }
+        List<Client> finished = new ArrayList<>();
+        for (Future<Client> future : futures) {
+            finished.add(future.get());
+        }
+        long wall = System.nanoTime() - start;
+        pool.shutdown();
+
+        List<LatencyStats> stats = new ArrayList<>();
+        long reserved = 0;
+        long total = 0;
+        for (int c = 0; c < COMMANDS.length; c++) {
+            int count = 0;
+            for (Client client : finished) {
+                count += client.counts[c];
+            }
+            long[] all = new long[count];
+            int at = 0;
+            for (Client client : finished) {
+                System.arraycopy(client.latencies[c], 0, all, at, client.counts[c]);
+                at += client.counts[c];
+            }
+            total += count;
+            LatencyStats commandStats = new LatencyStats(COMMANDS[c], all, wall);
+            stats.add(commandStats);
+            System.out.println(commandStats);
+        }
+        for (Client client : finished) {
+            reserved += client.reserved;
+        }
+        System.out.println(String.format(Locale.ROOT, "%d clients, %d commands in %.1f s: %.0f commands/s, " +
+                        "%d reservations (%.0f/s)", clients, total, wall / 1e9, total * 1e9 / wall,
+                reserved, reserved * 1e9 / wall));
+        return stats;
+    }
+
+    // one simulated patient with its own session; only ever touched by its own thread until it finishes
+    private class Client {
+        private final int id;
+        private final Random random;
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private final Session session = new Session(new PrintStream(output, true, StandardCharsets.UTF_8),
+                "load-client");
+        private final long[][] latencies = new long[COMMANDS.length][1024];
+        private final int[] counts = new int[COMMANDS.length];
+        private int created = 0;
+        private long reserved = 0;
+
+        private Client(int id) {
+            this.id = id;
+            this.random = new Random(id);
+        }
+
+        private void runUntil(long deadline) {
+            String username = "load" + id;
+            execute("create_patient " + username + " " + DataSeeder.PASSWORD);
+            execute("login_patient " + username + " " + DataSeeder.PASSWORD);
+            while (System.nanoTime() < deadline) {
+                int command = pick();
+                String line;
+                switch (COMMANDS[command]) {
+                    case "create_patient":
+                        line = "create_patient load" + id + "x" + (created++) + " " + DataSeeder.PASSWORD;
+                        break;
+                    case "login_patient":
+                        // a logged-in session refuses a second login, so log out first and time only the login
+                        execute("logout");
+                        line = "login_patient " + username + " " + DataSeeder.PASSWORD;
+                        break;
+                    case "search_caregiver_schedule":
+                        line = "search_caregiver_schedule " + randomDate();
+                        break;
+                    default:
+                        line = "reserve " + randomDate() + " " +
+                                DataSeeder.VACCINES[random.nextInt(DataSeeder.VACCINES.length)];
+                        break;
+                }
+                long start = System.nanoTime();
+                String result = execute(line);
+                record(command, System.nanoTime() - start);
+                if (result.startsWith("Appointment ID")) {
+                    reserved++;
+                }
+            }
+        }
+
+        private String execute(String line) {
+            output.reset();
+            Scheduler.execute(session, line);
+            return output.toString(StandardCharsets.UTF_8);
+        }
+
+        private void record(int command, long nanos) {
+            if (counts[command] == latencies[command].length) {
+                latencies[command] = Arrays.copyOf(latencies[command], counts[command] * 2);
+            }
+            latencies[command][counts[command]++] = nanos;
+        }
+
+        private int pick() {
+            int r = random.nextInt(totalWeight);
+            for (int c = 0; c < weights.length; c++) {
+                r -= weights[c];
+                if (r < 0) {
+                    return c;
+                }
+            }
+            return weights.length - 1;
+        }
+
+        private String randomDate() {
+            return DataSeeder.FIRST_OPEN_DATE.plusDays(random.nextInt(days)).toString();
+        }
+    }
+
+    private static List<String> checkInvariants(Map<String, Integer> dosesBefore) throws SQLException {
+        List<String> violations = new ArrayList<>();
+        Date firstOpen = Date.valueOf(DataSeeder.FIRST_OPEN_DATE);
+        Map<String, Integer> booked = new HashMap<>();
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try {
+            try (PreparedStatement statement = con.prepareStatement(
+                    "SELECT caregiverUsername, Time, COUNT(*) AS n FROM Appointments WHERE Time >= ? " +
+                    "GROUP BY caregiverUsername, Time HAVING COUNT(*) > 1")) {
+                statement.setDate(1, firstOpen);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        violations.add("caregiver " + resultSet.getString("caregiverUsername") + " has " +
+                                resultSet.getInt("n") + " appointments on " + resultSet.getDate("Time"));
+                    }
+                }
+            }
+            try (PreparedStatement statement = con.prepareStatement(
+                    "SELECT P.caregiverUsername, P.Time FROM Appointments P JOIN Availabilities A " +
+                    "ON A.Username = P.caregiverUsername AND A.Time = P.Time WHERE P.Time >= ?")) {
+                statement.setDate(1, firstOpen);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        violations.add("caregiver " + resultSet.getString("caregiverUsername") +
+                                " is booked but still available on " + resultSet.getDate("Time"));
+                    }
+                }
+            }
+            try (PreparedStatement statement = con.prepareStatement(
+                    "SELECT appointmentID FROM Appointments GROUP BY appointmentID HAVING COUNT(*) > 1")) {
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        violations.add("appointment ID " + resultSet.getInt("appointmentID") + " is used twice");
+                    }
+                }
+            }
+
+            try (PreparedStatement statement = con.prepareStatement(
+                    "SELECT vaccineName, COUNT(*) AS n FROM Appointments WHERE Time >= ? GROUP BY vaccineName")) {
+                statement.setDate(1, firstOpen);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        booked.put(resultSet.getString("vaccineName"), resultSet.getInt("n"));
+                    }
+                }
+            }
+        } finally {
+            cm.returnConnection(con);
+        }
+
+        for (Map.Entry<String, Integer> entry : doses().entrySet()) {
+            String vaccine = entry.getKey();
+            int after = entry.getValue();
+            if (after < 0) {
+                violations.add(vaccine + " has " + after + " doses");
+            }
+            int expected = dosesBefore.getOrDefault(vaccine, 0) - booked.getOrDefault(vaccine, 0);
+            if (after != expected) {
+                violations.add(vaccine + " has " + after + " doses but " + expected + " were expected");
+            }
+        }
+        return violations;
+    }
+
+    private static Map<String, Integer> doses() throws SQLException {
+        Map<String, Integer> doses = new LinkedHashMap<>();
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (PreparedStatement statement = con.prepareStatement("SELECT Name, Doses FROM Vaccines")) {
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    doses.put(resultSet.getString("Name"), resultSet.getInt("Doses"));
+                }
+            }
+        } finally {
+            cm.returnConnection(con);
+        }
+        return doses;
+    }
+
+    private static void capDoses(int doses) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (PreparedStatement statement = con.prepareStatement("UPDATE Vaccines SET Doses = ?")) {
+            statement.setInt(1, doses);
+            statement.executeUpdate();
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+
+    // "reserve=40,login_patient=10" -> weights in COMMANDS order; null if malformed
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[COMMANDS.length];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            int index = Arrays.asList(COMMANDS).indexOf(pair[0]);
+            if (pair.length != 2 || index < 0) {
+                return null;
+            }
+            try {
+                weights[index] = Integer.parseInt(pair[1]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (weights[index] < 0) {
+                return null;
+            }
+        }
+        return Arrays.stream(weights).sum() > 0 ? weights : null;
+    }
+}
@@ -0,0 +1,203 @@
+package scheduler.bulk;
+
+import scheduler.cache.AvailabilityIndex;
+import scheduler.db.ConnectionManager;
+import scheduler.feed.Change;
+import scheduler.feed.ChangeFeedManager;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams (date, caregiver) rows into Availabilities with JDBC batching.
+//
+// Rows are buffered and sent BATCH_SIZE at a time on one pooled connection, one transaction per batch, so memory
+// stays flat however many rows are loaded and no single transaction holds locks for the whole load. Each insert
+// is guarded so rows that already exist, or that name an unknown caregiver, are skipped instead of failing the batch.
+// Other instances hear about the load once, with a single AVAILABILITIES_ADDED change after the last batch (or when
+// a failed load is closed), so they reload their index once per load rather than once per batch.
+//
+//     try (AvailabilityLoader loader = new AvailabilityLoader()) {
+//         loader.add(date, username);
+//         ...
+//         AvailabilityLoader.Summary summary = loader.finish();
+//     }
+//
+// Commands only ever load the logged-in caregiver's own days. Loading days for any caregiver is an operator task,
+// run on a host with the database settings rather than through a session:
+//
+//     java -cp <classes>:<driver>.jar scheduler.bulk.AvailabilityLoader <file>
+//
+// where every non-empty line of the file is "<date>,<caregiver>" and lines starting with # are ignored.
+public class AvailabilityLoader implements AutoCloseable {
+
+    public static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_IF_ABSENT = "INSERT INTO Availabilities (Time, Username) " +
+            "SELECT ?, C.Username FROM Caregivers C WHERE C.Username = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM Availabilities A WHERE A.Time = ? AND A.Username = C.Username)";
+
+    private final ConnectionManager cm = ConnectionManager.getInstance();
+    private final Connection con;
+    private final PreparedStatement statement;
+    private final long startNanos = System.nanoTime();
+
+    private final List<Date> batchDates = new ArrayList<>(BATCH_SIZE);
+    private final List<String> batchUsernames = new ArrayList<>(BATCH_SIZE);
+    private long inserted = 0;
+    private long skipped = 0;
+    // rows were committed that other instances have not been told about yet
+    private boolean unpublished = false;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.out.println("Usage: AvailabilityLoader <file of date,caregiver lines>");
+            System.exit(2);
+        }
+        int invalid = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]));
+             AvailabilityLoader loader = new AvailabilityLoader()) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                try {
+                    if (fields.length != 2 || fields[1].trim().isEmpty()) {
+                        throw new IllegalArgumentException();
+                    }
+                    loader.add(Date.valueOf(fields[0].trim()), fields[1].trim());
+                } catch (IllegalArgumentException e) {
+                    invalid++;
+                    System.out.println("Invalid line " + lineNumber);
+                }
+            }
+            System.out.println(loader.finish() + (invalid > 0 ? ", " + invalid + " invalid lines" : ""));
+        }
+        System.exit(invalid > 0 ? 1 : 0);
+    }
+
+    public AvailabilityLoader() throws SQLException {
+        con = cm.borrowConnection();
+        try {
+            con.setAutoCommit(false);
+            statement = con.prepareStatement(INSERT_IF_ABSENT);
+        } catch (SQLException e) {
+            cm.returnConnection(con);
+            throw e;
+        }
+    }
+
+    public void add(Date time, String caregiverUsername) throws SQLException {
+        statement.setDate(1, time);
+        statement.setString(2, caregiverUsername);
+        statement.setDate(3, time);
+        statement.addBatch();
+        batchDates.add(time);
+        batchUsernames.add(caregiverUsername);
+        if (batchDates.size() >= BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    // sends whatever is buffered and reports the totals
+    public Summary finish() throws SQLException {
+        flush();
+        publish();
+        return new Summary(inserted, skipped, System.nanoTime() - startNanos);
+    }
+
+    private void flush() throws SQLException {
+        if (batchDates.isEmpty()) {
+            return;
+        }
+        int[] counts = statement.executeBatch();
+        con.commit();
+
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        for (int i = 0; i < counts.length; i++) {
+            // some drivers only report that the batch succeeded, not per-row counts
+            if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                inserted++;
+                unpublished = true;
+                index.addAvailability(batchDates.get(i), batchUsernames.get(i));
+            } else {
+                skipped++;
+            }
+        }
+        batchDates.clear();
+        batchUsernames.clear();
+    }
+
+    // one change for everything committed so far; other instances reload their index rather than replay every row
+    private void publish() throws SQLException {
+        if (!unpublished) {
+            return;
+        }
+        ChangeFeedManager.getInstance().publish(con, new Change(Change.Kind.AVAILABILITIES_ADDED, null, null));
+        con.commit();
+        unpublished = false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            // a load that failed part way still committed its earlier batches; drop the failed one, then announce
+            con.rollback();
+            publish();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // the connection is returned below either way
+        }
+        cm.returnConnection(con);
+    }
+
+    public static class Summary {
+        private final long inserted;
+        private final long skipped;
+        private final long elapsedNanos;
+
+        private Summary(long inserted, long skipped, long elapsedNanos) {
+            this.inserted = inserted;
+            this.skipped = skipped;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getInserted() {
+            return inserted;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : (inserted + skipped) * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Uploaded " + inserted + " availabilities (" + skipped + " skipped) in " + getElapsedMillis() +
+                    " ms, " + String.format("%.0f", getRowsPerSecond()) + " rows/s";
+        }
+    }
+}
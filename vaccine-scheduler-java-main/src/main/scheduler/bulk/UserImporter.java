@@ -0,0 +1,291 @@
+package scheduler.bulk;
+
+import scheduler.cache.UnknownUsernameCache;
+import scheduler.db.ConnectionManager;
+import scheduler.db.SqlErrors;
+import scheduler.util.HashSpec;
+import scheduler.util.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Imports patient and caregiver accounts from a CSV file of "role,username,password" lines
+// (role is patient or caregiver; an optional header line and lines starting with # are ignored).
+//
+// The import runs in phases so that each expensive step is done in bulk:
+//   1. parse and validate every line (same password rules as create_patient, duplicates within the file)
+//   2. look up which usernames already exist, CHECK_CHUNK names per query
+//   3. hash passwords in parallel on a fork-join pool using every core
+//   4. insert the accounts with batched statements, one transaction per INSERT_BATCH rows;
+//      a batch that fails is retried row by row so its good rows still load
+// Lines that fail any phase are reported individually and do not stop the rest of the import.
+public class UserImporter {
+
+    private static final int CHECK_CHUNK = 500;
+    private static final int INSERT_BATCH = 1000;
+
+    private final Consumer<String> progress;
+
+    // progress receives human readable status lines as the import advances
+    public UserImporter(Consumer<String> progress) {
+        this.progress = progress;
+    }
+
+    public Report importCsv(Path file) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Report report = new Report();
+
+        // phase 1: parse and validate
+        List<Row> patients = new ArrayList<>();
+        List<Row> caregivers = new ArrayList<>();
+        Set<String> seenPatients = new HashSet<>();
+        Set<String> seenCaregivers = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || (lineNumber == 1 && line.startsWith("role,"))) {
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                if (fields.length != 3 || fields[1].trim().isEmpty()) {
+                    report.error(lineNumber, "", "expected role,username,password");
+                    continue;
+                }
+                String role = fields[0].trim().toLowerCase();
+                Row row = new Row(lineNumber, fields[1].trim(), fields[2]);
+                if (role.equals("patient")) {
+                    String problem = Util.passwordWeakness(row.password);
+                    if (problem != null) {
+                        report.error(row, problem);
+                    } else if (!seenPatients.add(row.username)) {
+                        report.error(row, "duplicate username in file");
+                    } else {
+                        patients.add(row);
+                    }
+                } else if (role.equals("caregiver")) {
+                    if (!seenCaregivers.add(row.username)) {
+                        report.error(row, "duplicate username in file");
+                    } else {
+                        caregivers.add(row);
+                    }
+                } else {
+                    report.error(row, "unknown role " + fields[0].trim());
+                }
+            }
+        }
+        progress.accept("Parsed " + (patients.size() + caregivers.size()) + " accounts, " +
+                report.getErrors().size() + " rejected");
+
+        // phase 2: drop usernames that are already taken
+        patients = withoutExisting("Patients", patients, report);
+        caregivers = withoutExisting("Caregivers", caregivers, report);
+        progress.accept((patients.size() + caregivers.size()) + " accounts left after checking existing usernames");
+
+        // phase 3: hash, every account with the same spec
+        HashSpec spec = HashSpec.current();
+        List<Row> all = new ArrayList<>(patients);
+        all.addAll(caregivers);
+        hashAll(all, spec);
+
+        // phase 4: insert
+        report.created += insertAll("Patients", patients, spec, report);
+        report.created += insertAll("Caregivers", caregivers, spec, report);
+
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private List<Row> withoutExisting(String table, List<Row> rows, Report report) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        String query = "SELECT Username FROM " + table + " WHERE Username IN (" +
+                String.join(", ", Collections.nCopies(CHECK_CHUNK, "?")) + ")";
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (PreparedStatement statement = con.prepareStatement(query)) {
+            for (int from = 0; from < rows.size(); from += CHECK_CHUNK) {
+                List<Row> chunk = rows.subList(from, Math.min(rows.size(), from + CHECK_CHUNK));
+                // a short last chunk repeats its final name so every chunk reuses the same prepared statement
+                for (int i = 0; i < CHECK_CHUNK; i++) {
+                    statement.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)).username);
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        existing.add(resultSet.getString("Username"));
+                    }
+                }
+            }
+        } finally {
+            cm.returnConnection(con);
+        }
+
+        List<Row> remaining = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            if (existing.contains(row.username)) {
+                report.error(row, "username taken");
+            } else {
+                remaining.add(row);
+            }
+        }
+        return remaining;
+    }
+
+    private void hashAll(List<Row> rows, HashSpec spec) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        AtomicInteger done = new AtomicInteger();
+        int step = Math.max(1, rows.size() / 10);
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            pool.submit(() -> rows.parallelStream().forEach(row -> {
+                row.salt = Util.generateSalt();
+                row.hash = Util.generateHash(row.password, row.salt, spec);
+                int count = done.incrementAndGet();
+                if (count % step == 0) {
+                    progress.accept("Hashed " + count + "/" + rows.size() + " passwords");
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing passwords");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private int insertAll(String table, List<Row> rows, HashSpec spec, Report report) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        String insert = "INSERT INTO " + table + " (Username, Salt, Hash, HashSpec) VALUES (?, ?, ?, ?)";
+        int created = 0;
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (PreparedStatement statement = con.prepareStatement(insert)) {
+            con.setAutoCommit(false);
+            for (int from = 0; from < rows.size(); from += INSERT_BATCH) {
+                List<Row> batch = rows.subList(from, Math.min(rows.size(), from + INSERT_BATCH));
+                for (Row row : batch) {
+                    statement.setString(1, row.username);
+                    statement.setBytes(2, row.salt);
+                    statement.setBytes(3, row.hash);
+                    statement.setString(4, spec.toString());
+                    statement.addBatch();
+                }
+                try {
+                    statement.executeBatch();
+                    con.commit();
+                    created += batch.size();
+                    UnknownUsernameCache unknown = UnknownUsernameCache.forTable(table);
+                    for (Row row : batch) {
+                        unknown.invalidate(row.username);
+                    }
+                } catch (SQLException e) {
+                    // most likely a username created by someone else since phase 2; insert this batch
+                    // one row at a time so only the rows that actually fail are rejected
+                    con.rollback();
+                    statement.clearBatch();
+                    created += insertOneByOne(con, statement, table, batch, spec, report);
+                }
+                progress.accept("Inserted " + Math.min(rows.size(), from + INSERT_BATCH) + "/" + rows.size() +
+                        " " + table.toLowerCase());
+            }
+        } finally {
+            cm.returnConnection(con);
+        }
+        return created;
+    }
+
+    private int insertOneByOne(Connection con, PreparedStatement statement, String table, List<Row> rows,
+                               HashSpec spec, Report report) throws SQLException {
+        int created = 0;
+        UnknownUsernameCache unknown = UnknownUsernameCache.forTable(table);
+        for (Row row : rows) {
+            statement.setString(1, row.username);
+            statement.setBytes(2, row.salt);
+            statement.setBytes(3, row.hash);
+            statement.setString(4, spec.toString());
+            try {
+                statement.executeUpdate();
+                con.commit();
+                created++;
+                unknown.invalidate(row.username);
+            } catch (SQLException e) {
+                con.rollback();
+                if (SqlErrors.isUniqueViolation(e)) {
+                    report.error(row, "username taken");
+                } else {
+                    report.error(row, "insert failed");
+                    e.printStackTrace();
+                }
+            }
+        }
+        return created;
+    }
+
+    private static class Row {
+        private final int lineNumber;
+        private final String username;
+        private final String password;
+        private byte[] salt;
+        private byte[] hash;
+
+        private Row(int lineNumber, String username, String password) {
+            this.lineNumber = lineNumber;
+            this.username = username;
+            this.password = password;
+        }
+    }
+
+    public static class Report {
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private int created = 0;
+        private long elapsedNanos = 0;
+
+        private void error(Row row, String reason) {
+            error(row.lineNumber, row.username, reason);
+        }
+
+        private void error(int lineNumber, String username, String reason) {
+            errors.add("line " + lineNumber + (username.isEmpty() ? "" : " (" + username + ")") + ": " + reason);
+        }
+
+        public int getCreated() {
+            return created;
+        }
+
+        // one entry per rejected line, in the order they were found
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            return "Created " + created + " accounts, " + errors.size() + " rejected, in " + getElapsedMillis() + " ms";
+        }
+    }
+}
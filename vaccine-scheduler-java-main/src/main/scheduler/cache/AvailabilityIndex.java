@@ -0,0 +1,149 @@
+package scheduler.cache;
+
+import scheduler.db.CachedStatement;
+import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// In-memory index of free caregivers: date -> caregivers (sorted by username) who uploaded availability for that
+// date and are not already booked on it.
+//
+// Writers (upload_availability, reserve) update the database first and then write through to the index.
+// Changes made by other processes, or writes that raced with a reload, are picked up by a full reconciliation
+// against the database every AvailabilityStalenessSec / 2 seconds (default 60). If reconciliation has not
+// succeeded within AvailabilityStalenessSec, the next lookup reloads synchronously, so an answer is never staler
+// than that bound.
+public class AvailabilityIndex {
+
+    private static final AvailabilityIndex INSTANCE = new AvailabilityIndex();
+
+    private final long stalenessMs;
+
+    private volatile ConcurrentSkipListMap<LocalDate, NavigableSet<String>> free = new ConcurrentSkipListMap<>();
+    private volatile long loadedAt = 0;
+    private ScheduledExecutorService reconciler = null;
+
+    private AvailabilityIndex() {
+        long staleness = Util.getIntSetting("AvailabilityStalenessSec", 60);
+        this.stalenessMs = Math.max(1, staleness) * 1000;
+    }
+
+    public static AvailabilityIndex getInstance() {
+        return INSTANCE;
+    }
+
+    // loads the index and starts periodic reconciliation; safe to call more than once
+    public synchronized void start() throws SQLException {
+        if (reconciler != null) {
+            return;
+        }
+        reload();
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "availability-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(500, stalenessMs / 2);
+        reconciler.scheduleAtFixedRate(() -> {
+            try {
+                reload();
+            } catch (SQLException e) {
+                System.out.println("Failed to reconcile caregiver availabilities");
+                e.printStackTrace();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // rebuilds the index from the database and swaps it in
+    public void reload() throws SQLException {
+        ConcurrentSkipListMap<LocalDate, NavigableSet<String>> fresh = new ConcurrentSkipListMap<>();
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (CachedStatement cached = cm.prepare(con, Query.FREE_SLOTS);
+             ResultSet resultSet = cached.getStatement().executeQuery()) {
+            while (resultSet.next()) {
+                LocalDate day = resultSet.getDate("Time").toLocalDate();
+                fresh.computeIfAbsent(day, k -> new ConcurrentSkipListSet<>()).add(resultSet.getString("Username"));
+            }
+        } finally {
+            cm.returnConnection(con);
+        }
+        free = fresh;
+        loadedAt = System.currentTimeMillis();
+    }
+
+    // caregivers free on the given date, in username order; the returned set is a read-only live view
+    public NavigableSet<String> freeCaregivers(Date time) throws SQLException {
+        ensureFresh();
+        NavigableSet<String> caregivers = free.get(time.toLocalDate());
+        return caregivers == null ? Collections.emptyNavigableSet() : Collections.unmodifiableNavigableSet(caregivers);
+    }
+
+    // the first date on or after from with a free caregiver, or null if there is none
+    public LocalDate nextFreeDate(LocalDate from) throws SQLException {
+        ensureFresh();
+        for (Map.Entry<LocalDate, NavigableSet<String>> day : free.tailMap(from, true).entrySet()) {
+            if (!day.getValue().isEmpty()) {
+                return day.getKey();
+            }
+        }
+        return null;
+    }
+
+    // number of free caregivers per date from..to inclusive, leaving out dates with none; one ordered range scan
+    public SortedMap<LocalDate, Integer> freeCounts(LocalDate from, LocalDate to) throws SQLException {
+        ensureFresh();
+        SortedMap<LocalDate, Integer> counts = new TreeMap<>();
+        for (Map.Entry<LocalDate, NavigableSet<String>> day : free.subMap(from, true, to, true).entrySet()) {
+            int caregivers = day.getValue().size();
+            if (caregivers > 0) {
+                counts.put(day.getKey(), caregivers);
+            }
+        }
+        return counts;
+    }
+
+    // write-through after an availability row was committed
+    public void addAvailability(Date time, String caregiverUsername) {
+        free.computeIfAbsent(time.toLocalDate(), k -> new ConcurrentSkipListSet<>()).add(caregiverUsername);
+    }
+
+    // write-through after an availability row was claimed or deleted
+    // (emptied dates are left in place so a concurrent add can never land in a detached set; reload drops them)
+    public void removeAvailability(Date time, String caregiverUsername) {
+        NavigableSet<String> caregivers = free.get(time.toLocalDate());
+        if (caregivers != null) {
+            caregivers.remove(caregiverUsername);
+        }
+    }
+
+    public long getAgeMillis() {
+        return loadedAt == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - loadedAt;
+    }
+
+    private void ensureFresh() throws SQLException {
+        if (getAgeMillis() > stalenessMs) {
+            synchronized (this) {
+                if (getAgeMillis() > stalenessMs) {
+                    reload();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package scheduler.cache;
+
+import scheduler.util.Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Remembers usernames that were recently looked up and found not to exist, one cache per account table, so repeated
+// logins for accounts that do not exist are answered from memory instead of the database.
+//
+// Entries are dropped when the account is created by this process and otherwise expire after
+// UnknownUsernameTtlSec (default 60), which bounds how long an account created by another process can be refused.
+// Each cache holds at most UnknownUsernameCacheSize (default 100000) names, dropping the least recently used.
+public class UnknownUsernameCache {
+
+    public static final UnknownUsernameCache PATIENTS = new UnknownUsernameCache();
+    public static final UnknownUsernameCache CAREGIVERS = new UnknownUsernameCache();
+
+    private final int maxSize = Math.max(1, Util.getIntSetting("UnknownUsernameCacheSize", 100_000));
+    private final long ttlMillis = Math.max(0, Util.getIntSetting("UnknownUsernameTtlSec", 60)) * 1000L;
+
+    // username -> when it was found missing
+    private final Map<String, Long> missing = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private UnknownUsernameCache() {
+    }
+
+    public static UnknownUsernameCache forTable(String table) {
+        return table.equalsIgnoreCase("Patients") ? PATIENTS : CAREGIVERS;
+    }
+
+    // true if the username was recently found not to exist
+    public boolean isKnownMissing(String username) {
+        synchronized (missing) {
+            Long since = missing.get(username);
+            if (since == null) {
+                return false;
+            }
+            if (System.currentTimeMillis() - since >= ttlMillis) {
+                missing.remove(username);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    public void recordMissing(String username) {
+        synchronized (missing) {
+            missing.put(username, System.currentTimeMillis());
+        }
+    }
+
+    // called once the username exists
+    public void invalidate(String username) {
+        synchronized (missing) {
+            missing.remove(username);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package scheduler.cache;
+
+import scheduler.db.CachedStatement;
+import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-memory view of the vaccine inventory: vaccine name -> available doses.
+//
+// The Vaccines table stays the only authority: a booking takes its dose with the guarded UPDATE inside its own
+// transaction (see ReservationEngine), so the count can never go below zero however many processes book at once.
+// The cached counts only let reserve turn away unknown or sold-out vaccines without a round trip, and answer
+// search_caregiver_schedule. Writes made by this process are reported with applied(); everything else is picked up
+// by re-reading the table every DoseRefreshIntervalMs (default 1000).
+public class VaccineInventory {
+
+    private static final VaccineInventory INSTANCE = new VaccineInventory();
+
+    private final long refreshIntervalMs;
+    private final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded = false;
+    private ScheduledExecutorService refresher = null;
+
+    private VaccineInventory() {
+        long interval = Util.getIntSetting("DoseRefreshIntervalMs", 1000);
+        this.refreshIntervalMs = Math.max(10, interval);
+    }
+
+    public static VaccineInventory getInstance() {
+        return INSTANCE;
+    }
+
+    // loads the counters and starts the periodic refresh; safe to call more than once
+    public synchronized void start() throws SQLException {
+        if (refresher != null) {
+            return;
+        }
+        reload();
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dose-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                // pick up doses added or taken by other processes
+                reload();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // re-reads the table
+    public void reload() throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (CachedStatement cached = cm.prepare(con, Query.ALL_VACCINES);
+             ResultSet resultSet = cached.getStatement().executeQuery()) {
+            while (resultSet.next()) {
+                counter(resultSet.getString("Name")).set(resultSet.getInt("Doses"));
+            }
+        } finally {
+            cm.returnConnection(con);
+        }
+        loaded = true;
+    }
+
+    // returns the cached dose count, or null if the vaccine is not known to this process
+    public Integer getDoses(String vaccineName) throws SQLException {
+        ensureLoaded();
+        AtomicInteger counter = counters.get(vaccineName);
+        return counter == null ? null : counter.get();
+    }
+
+    public boolean contains(String vaccineName) throws SQLException {
+        ensureLoaded();
+        return counters.containsKey(vaccineName);
+    }
+
+    // records a change that has already been committed to the table
+    public void applied(String vaccineName, int delta) {
+        counter(vaccineName).addAndGet(delta);
+    }
+
+    // all vaccines with their cached dose counts, ordered by name
+    public SortedMap<String, Integer> snapshot() throws SQLException {
+        ensureLoaded();
+        SortedMap<String, Integer> snapshot = new TreeMap<>();
+        for (Map.Entry<String, AtomicInteger> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().get());
+        }
+        return snapshot;
+    }
+
+    private AtomicInteger counter(String vaccineName) {
+        return counters.computeIfAbsent(vaccineName, k -> new AtomicInteger());
+    }
+
+    private void ensureLoaded() throws SQLException {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    reload();
+                }
+            }
+        }
+    }
+}
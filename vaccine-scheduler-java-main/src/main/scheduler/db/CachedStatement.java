@@ -0,0 +1,39 @@
+package scheduler.db;
+
+import java.sql.PreparedStatement;
+
+// A prepared statement borrowed from a connection's statement cache, for use in try-with-resources:
+//
+//     try (CachedStatement cached = cm.prepare(con, Query.FIND_PATIENT)) {
+//         PreparedStatement statement = cached.getStatement();
+//         ...
+//         try (ResultSet resultSet = statement.executeQuery()) { ... }
+//     }
+//
+// close() resets the parameters and hands the statement back to the cache instead of closing it.
+// Close every ResultSet yourself; the statement outlives it.
+public class CachedStatement implements AutoCloseable {
+
+    private final StatementCache cache;
+    private final PreparedStatement statement;
+    private final StatementCache.Entry entry;
+    private boolean closed = false;
+
+    CachedStatement(StatementCache cache, PreparedStatement statement, StatementCache.Entry entry) {
+        this.cache = cache;
+        this.statement = statement;
+        this.entry = entry;
+    }
+
+    public PreparedStatement getStatement() {
+        return statement;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            cache.release(statement, entry);
+        }
+    }
+}
@@ -1,41 +1,308 @@
 package scheduler.db;
 
+import scheduler.util.Util;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+// A bounded pool of JDBC connections shared by the whole process.
+// Callers borrow a connection, use it, and must hand it back with returnConnection() in a finally block:
+//
+//     ConnectionManager cm = ConnectionManager.getInstance();
+//     Connection con = cm.borrowConnection();
+//     try { ... } finally { cm.returnConnection(con); }
+//
+// Connections come from the configured Storage backend. The pool is configured through the same settings
+// (environment variables or -D system properties) as the database itself:
+//   PoolMaxSize            maximum number of open connections (default 10)
+//   PoolBorrowTimeoutMs    how long a borrower waits for a free connection (default 5000)
+//   PoolIdleTimeoutSec     idle connections older than this are closed (default 300)
+//   PoolValidateAfterMs    connections idle longer than this are validated before being handed out (default 5000)
+//   StatementCacheSize     prepared statements kept open per connection, see prepare() (default 32, 0 disables)
 public class ConnectionManager {
 
-    private final String driverName = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
-    private final String connectionUrl = "jdbc:sqlserver://" + System.getenv("Server") +
-            ".database.windows.net:1433;database=" + System.getenv("DBName");
-    private final String userName = System.getenv("UserID");
-    private final String userPass = System.getenv("Password");
+    private static final ConnectionManager INSTANCE = new ConnectionManager();
+
+    private final Storage storage = selectStorage();
+
+    private final int maxSize = Util.getIntSetting("PoolMaxSize", 10);
+    private final long borrowTimeoutMs = Util.getIntSetting("PoolBorrowTimeoutMs", 5000);
+    private final long idleTimeoutMs = Util.getIntSetting("PoolIdleTimeoutSec", 300) * 1000L;
+    private final long validateAfterMs = Util.getIntSetting("PoolValidateAfterMs", 5000);
+    private final int statementCacheSize = Math.max(0, Util.getIntSetting("StatementCacheSize", 32));
+
+    // one permit per connection that may be handed out; idle connections do not hold a permit
+    private final Semaphore permits = new Semaphore(maxSize, true);
+    // most recently returned connection first, so hot connections stay hot and cold ones age out
+    private final Deque<IdleConnection> idle = new ArrayDeque<>();
+    // prepared statements of every open connection
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+
+    // metrics
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private ConnectionManager() {
+        ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public static ConnectionManager getInstance() {
+        return INSTANCE;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    private static Storage selectStorage() {
+        String kind = Util.getSetting("Storage");
+        if (kind == null || kind.equalsIgnoreCase("sqlserver")) {
+            return new SqlServerStorage();
+        }
+        if (kind.equalsIgnoreCase("embedded")) {
+            return new EmbeddedStorage();
+        }
+        throw new IllegalStateException("Unknown Storage: " + kind + " (expected sqlserver or embedded)");
+    }
+
+    public Connection borrowConnection() throws SQLException {
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection");
+        }
+        long waited = System.nanoTime() - start;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        if (!acquired) {
+            borrowTimeouts.incrementAndGet();
+            throw new SQLTimeoutException("Timed out after " + borrowTimeoutMs + "ms waiting for a connection");
+        }
+
+        try {
+            Connection con = takeIdle();
+            if (con == null) {
+                con = storage.openConnection();
+                created.incrementAndGet();
+            }
+            borrowed.incrementAndGet();
+            return con;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
 
-    private Connection con = null;
+    // Prepares a named query on a borrowed connection, reusing the statement the connection prepared last time.
+    // Use it in try-with-resources so the statement goes back to the cache; see CachedStatement.
+    public CachedStatement prepare(Connection con, Query query) throws SQLException {
+        return statementCaches.computeIfAbsent(con, c -> new StatementCache(c, statementCacheSize)).lease(query);
+    }
 
-    public ConnectionManager() {
+    public void returnConnection(Connection con) {
+        if (con == null) {
+            return;
+        }
         try {
-            Class.forName(driverName);
-        } catch (ClassNotFoundException e) {
-            System.out.println(e.toString());
+            if (con.isClosed()) {
+                discardStatements(con);
+                return;
+            }
+            // never leak an open transaction into the next borrower
+            if (!con.getAutoCommit()) {
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+            synchronized (idle) {
+                idle.push(new IdleConnection(con, System.currentTimeMillis()));
+            }
+        } catch (SQLException e) {
+            closeQuietly(con);
+        } finally {
+            permits.release();
+        }
+    }
+
+    // pops idle connections until a usable one is found, or returns null if the pool has none
+    private Connection takeIdle() {
+        while (true) {
+            IdleConnection entry;
+            synchronized (idle) {
+                entry = idle.poll();
+            }
+            if (entry == null) {
+                return null;
+            }
+            long idleFor = System.currentTimeMillis() - entry.since;
+            if (idleFor >= idleTimeoutMs) {
+                evicted.incrementAndGet();
+                closeQuietly(entry.con);
+                continue;
+            }
+            if (idleFor >= validateAfterMs && !isValid(entry.con)) {
+                validationFailures.incrementAndGet();
+                closeQuietly(entry.con);
+                continue;
+            }
+            return entry.con;
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        synchronized (idle) {
+            Iterator<IdleConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                IdleConnection entry = it.next();
+                if (now - entry.since >= idleTimeoutMs) {
+                    it.remove();
+                    evicted.incrementAndGet();
+                    closeQuietly(entry.con);
+                }
+            }
         }
     }
 
-    public Connection createConnection() {
+    private static boolean isValid(Connection con) {
         try {
-            con = DriverManager.getConnection(connectionUrl, userName, userPass);
+            return con.isValid(2);
         } catch (SQLException e) {
-            e.printStackTrace();
+            return false;
         }
-        return con;
     }
 
-    public void closeConnection() {
+    private void discardStatements(Connection con) {
+        StatementCache cache = statementCaches.remove(con);
+        if (cache != null) {
+            cache.closeAll();
+        }
+    }
+
+    private void closeQuietly(Connection con) {
+        discardStatements(con);
         try {
-            this.con.close();
+            con.close();
         } catch (SQLException e) {
-            e.printStackTrace();
+            // the connection is being discarded anyway
+        }
+    }
+
+    // Metrics
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public long getBorrowCount() {
+        return borrowed.get();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailures.get();
+    }
+
+    public long getBorrowTimeoutCount() {
+        return borrowTimeouts.get();
+    }
+
+    public long getStatementCacheHits() {
+        return StatementCache.getHits();
+    }
+
+    public long getStatementCacheMisses() {
+        return StatementCache.getMisses();
+    }
+
+    public double getStatementCacheHitRate() {
+        long lookups = getStatementCacheHits() + getStatementCacheMisses();
+        return lookups == 0 ? 0 : (double) getStatementCacheHits() / lookups;
+    }
+
+    public long getStatementCacheEvictions() {
+        return StatementCache.getEvictions();
+    }
+
+    public long getOpenStatementCount() {
+        return StatementCache.getOpenStatements();
+    }
+
+    public long getMaxBorrowWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    public double getAverageBorrowWaitMillis() {
+        long attempts = borrowed.get() + borrowTimeouts.get();
+        return attempts == 0 ? 0 : totalWaitNanos.get() / 1e6 / attempts;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionManager{" +
+                "storage=" + storage.getName() +
+                ", active=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", maxSize=" + maxSize +
+                ", borrowed=" + getBorrowCount() +
+                ", created=" + getCreatedCount() +
+                ", evicted=" + getEvictedCount() +
+                ", validationFailures=" + getValidationFailureCount() +
+                ", borrowTimeouts=" + getBorrowTimeoutCount() +
+                ", avgWaitMs=" + String.format("%.3f", getAverageBorrowWaitMillis()) +
+                ", maxWaitMs=" + getMaxBorrowWaitMillis() +
+                ", statementHitRate=" + String.format("%.3f", getStatementCacheHitRate()) +
+                ", openStatements=" + getOpenStatementCount() +
+                '}';
+    }
+
+    private static class IdleConnection {
+        private final Connection con;
+        private final long since;
+
+        private IdleConnection(Connection con, long since) {
+            this.con = con;
+            this.since = since;
         }
     }
 }
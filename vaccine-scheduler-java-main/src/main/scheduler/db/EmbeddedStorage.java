@@ -0,0 +1,113 @@
+package scheduler.db;
+
+import scheduler.util.Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+// An in-process database for local runs, edge clinics and reproducible benchmarks; no network, no cloud account.
+//
+// Any embedded JDBC engine on the classpath works. The defaults target H2 in SQL Server compatibility mode, kept
+// in memory for the life of the process:
+//   EmbeddedDriver   JDBC driver class (default org.h2.Driver)
+//   EmbeddedUrl      JDBC URL (default jdbc:h2:mem:scheduler;MODE=MSSQLServer;DB_CLOSE_DELAY=-1)
+//   EmbeddedSchema   schema script to run on startup (default: create.sql from the classpath, then
+//                    src/main/resources/create.sql)
+//   EmbeddedIndexes  false skips the script's CREATE INDEX statements, for before/after benchmarks (default true)
+// The schema script runs once, before the first connection is handed out.
+public class EmbeddedStorage implements Storage {
+
+    private static final String DEFAULT_DRIVER = "org.h2.Driver";
+    private static final String DEFAULT_URL = "jdbc:h2:mem:scheduler;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+
+    private final String driverName = settingOrDefault("EmbeddedDriver", DEFAULT_DRIVER);
+    private final String connectionUrl = settingOrDefault("EmbeddedUrl", DEFAULT_URL);
+    private final String schemaPath = Util.getSetting("EmbeddedSchema");
+    private final boolean createIndexes = !"false".equalsIgnoreCase(Util.getSetting("EmbeddedIndexes"));
+
+    private volatile boolean initialized = false;
+
+    @Override
+    public Connection openConnection() throws SQLException {
+        if (!initialized) {
+            initialize();
+        }
+        return DriverManager.getConnection(connectionUrl);
+    }
+
+    @Override
+    public String getName() {
+        return "embedded";
+    }
+
+    private synchronized void initialize() throws SQLException {
+        if (initialized) {
+            return;
+        }
+        try {
+            Class.forName(driverName);
+        } catch (ClassNotFoundException e) {
+            // nothing in this repository bundles an embedded engine, so the jar has to be supplied at run time
+            throw new SQLException("Embedded storage needs the JDBC driver " + driverName + " on the classpath; " +
+                    "add the H2 jar to -cp (java -cp <classes>:h2.jar ...) or point EmbeddedDriver and EmbeddedUrl " +
+                    "at another embedded engine", e);
+        }
+        String script;
+        try {
+            script = readSchema();
+        } catch (IOException e) {
+            throw new SQLException("Could not read the schema script", e);
+        }
+        try (Connection con = DriverManager.getConnection(connectionUrl);
+             Statement statement = con.createStatement()) {
+            for (String sql : splitStatements(script)) {
+                if (!createIndexes && sql.regionMatches(true, 0, "CREATE INDEX", 0, 12)) {
+                    continue;
+                }
+                statement.execute(sql);
+            }
+        }
+        initialized = true;
+    }
+
+    private String readSchema() throws IOException {
+        if (schemaPath != null) {
+            return Files.readString(Paths.get(schemaPath));
+        }
+        try (InputStream in = EmbeddedStorage.class.getResourceAsStream("/resources/create.sql")) {
+            if (in != null) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        Path fallback = Paths.get("src", "main", "resources", "create.sql");
+        return Files.readString(fallback);
+    }
+
+    // splits a script on ';', dropping "--" comment lines and empty statements
+    static String[] splitStatements(String script) {
+        StringBuilder withoutComments = new StringBuilder();
+        for (String line : script.split("\\R")) {
+            if (!line.trim().startsWith("--")) {
+                withoutComments.append(line).append('\n');
+            }
+        }
+        return Arrays.stream(withoutComments.toString().split(";"))
+                .map(String::trim)
+                .filter(sql -> !sql.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static String settingOrDefault(String name, String defaultValue) {
+        String value = Util.getSetting(name);
+        return value != null ? value : defaultValue;
+    }
+}
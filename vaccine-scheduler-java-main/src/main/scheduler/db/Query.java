@@ -0,0 +1,79 @@
+package scheduler.db;
+
+// Every statement the scheduler runs on its request paths, by name.
+// Prepare them through ConnectionManager.prepare() so each connection parses a query once and reuses it afterwards.
+public enum Query {
+
+    // accounts
+    INSERT_PATIENT("INSERT INTO Patients (Username, Salt, Hash, HashSpec) VALUES (?, ?, ?, ?)"),
+    FIND_PATIENT("SELECT Salt, Hash, HashSpec FROM Patients WHERE Username = ?"),
+    // guarded by the old salt so a concurrent password change is never overwritten
+    REHASH_PATIENT("UPDATE Patients SET Salt = ?, Hash = ?, HashSpec = ? WHERE Username = ? AND Salt = ?"),
+    INSERT_CAREGIVER("INSERT INTO Caregivers (Username, Salt, Hash, HashSpec) VALUES (?, ?, ?, ?)"),
+    FIND_CAREGIVER("SELECT Salt, Hash, HashSpec FROM Caregivers WHERE Username = ?"),
+    REHASH_CAREGIVER("UPDATE Caregivers SET Salt = ?, Hash = ?, HashSpec = ? WHERE Username = ? AND Salt = ?"),
+
+    // availabilities
+    INSERT_AVAILABILITY("INSERT INTO Availabilities (Time, Username) VALUES (?, ?)"),
+    // every availability not taken by an appointment, see AvailabilityIndex
+    FREE_SLOTS("SELECT A.Time, A.Username FROM Availabilities A WHERE NOT EXISTS " +
+            "(SELECT 1 FROM Appointments P WHERE P.caregiverUsername = A.Username AND P.Time = A.Time)"),
+
+    // vaccines
+    INSERT_VACCINE("INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)"),
+    FIND_VACCINE("SELECT Name, Doses FROM Vaccines WHERE Name = ?"),
+    ALL_VACCINES("SELECT Name, Doses FROM Vaccines"),
+    ADD_DOSES("UPDATE Vaccines SET Doses = Doses + ? WHERE Name = ?"),
+    // refuses any change that would take the count below zero
+    ADD_DOSES_GUARDED("UPDATE Vaccines SET Doses = Doses + ? WHERE Name = ? AND Doses + ? >= 0"),
+
+    // appointments
+    // the NOT EXISTS guard keeps a caregiver who re-uploaded an already booked day from being double-booked
+    CLAIM_SLOT("DELETE FROM Availabilities WHERE Time = ? AND Username = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM Appointments P WHERE P.caregiverUsername = ? AND P.Time = ?)"),
+    INSERT_APPOINTMENT("INSERT INTO Appointments " +
+            "(appointmentID, patientUsername, caregiverUsername, vaccineName, Time) VALUES (?, ?, ?, ?, ?)"),
+    NEXT_APPOINTMENT_BLOCK("SELECT NEXT VALUE FOR AppointmentIds AS blockStart"),
+    FIND_APPOINTMENT("SELECT Time, caregiverUsername, patientUsername, vaccineName FROM Appointments " +
+            "WHERE appointmentID = ?"),
+    DELETE_APPOINTMENT("DELETE FROM Appointments WHERE appointmentID = ?"),
+    // appointments per caregiver on or after a date, see CaregiverLoad
+    UPCOMING_PER_CAREGIVER("SELECT caregiverUsername, COUNT(*) AS booked FROM Appointments " +
+            "WHERE Time >= ? GROUP BY caregiverUsername"),
+    // a caregiver may have uploaded the day again after it was booked, so only add the row if it is missing
+    RESTORE_AVAILABILITY("INSERT INTO Availabilities (Time, Username) " +
+            "SELECT CAST(? AS date), CAST(? AS varchar(255)) " +
+            "WHERE NOT EXISTS (SELECT 1 FROM Availabilities WHERE Time = ? AND Username = ?)"),
+    // one keyset page of a user's appointments: ID > ?, date between ? and ?, at most ? rows
+    CAREGIVER_APPOINTMENTS("SELECT appointmentID, vaccineName, Time, patientUsername FROM Appointments " +
+            "WHERE caregiverUsername = ? AND appointmentID > ? AND Time >= ? AND Time <= ? " +
+            "ORDER BY appointmentID OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY"),
+    PATIENT_APPOINTMENTS("SELECT appointmentID, vaccineName, Time, caregiverUsername FROM Appointments " +
+            "WHERE patientUsername = ? AND appointmentID > ? AND Time >= ? AND Time <= ? " +
+            "ORDER BY appointmentID OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY"),
+
+    // login sessions, see SessionStore
+    INSERT_SESSION("INSERT INTO Sessions (TokenDigest, Role, Username, ExpiresAt) VALUES (?, ?, ?, ?)"),
+    FIND_SESSION("SELECT Role, Username, ExpiresAt FROM Sessions WHERE TokenDigest = ?"),
+    DELETE_SESSION("DELETE FROM Sessions WHERE TokenDigest = ?"),
+    DELETE_EXPIRED_SESSIONS("DELETE FROM Sessions WHERE ExpiresAt < ?"),
+
+    // the change feed between instances, see JdbcChangeFeed
+    INSERT_CHANGE("INSERT INTO ChangeLog (Seq, Origin, Kind, Subject, Time, CreatedAt) " +
+            "VALUES (NEXT VALUE FOR ChangeLogSeq, ?, ?, ?, ?, ?)"),
+    CHANGES_AFTER("SELECT Seq, Origin, Kind, Subject, Time FROM ChangeLog WHERE Seq > ? " +
+            "ORDER BY Seq OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY"),
+    CHANGES_BETWEEN("SELECT Seq, Origin, Kind, Subject, Time FROM ChangeLog WHERE Seq >= ? AND Seq <= ? ORDER BY Seq"),
+    LATEST_CHANGE("SELECT COALESCE(MAX(Seq), 0) AS latest FROM ChangeLog"),
+    DELETE_OLD_CHANGES("DELETE FROM ChangeLog WHERE CreatedAt < ?");
+
+    private final String sql;
+
+    Query(String sql) {
+        this.sql = sql;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+}
@@ -0,0 +1,24 @@
+package scheduler.db;
+
+import java.sql.SQLException;
+
+// Classifies SQLExceptions in a way that works for both standard SQLSTATEs and SQL Server's error numbers.
+public class SqlErrors {
+
+    private SqlErrors() {
+    }
+
+    // a primary key or unique constraint rejected the row
+    public static boolean isUniqueViolation(SQLException e) {
+        // SQL Server reports every integrity violation as 23000, so look at the error number instead
+        int code = e.getErrorCode();
+        return "23505".equals(e.getSQLState()) || code == 2627 || code == 2601;
+    }
+
+    // the database rolled the transaction back to resolve a conflict (deadlock, serialization failure);
+    // running it again may succeed
+    public static boolean isTransient(SQLException e) {
+        String state = e.getSQLState();
+        return (state != null && state.startsWith("40")) || e.getErrorCode() == 1205;
+    }
+}
@@ -0,0 +1,35 @@
+package scheduler.db;
+
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+// The course's Azure SQL Server database, configured through the Server, DBName, UserID and Password settings.
+public class SqlServerStorage implements Storage {
+
+    private final String driverName = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
+    private final String connectionUrl = "jdbc:sqlserver://" + Util.getSetting("Server") +
+            ".database.windows.net:1433;database=" + Util.getSetting("DBName");
+    private final String userName = Util.getSetting("UserID");
+    private final String userPass = Util.getSetting("Password");
+
+    public SqlServerStorage() {
+        try {
+            Class.forName(driverName);
+        } catch (ClassNotFoundException e) {
+            System.out.println(e.toString());
+        }
+    }
+
+    @Override
+    public Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(connectionUrl, userName, userPass);
+    }
+
+    @Override
+    public String getName() {
+        return "sqlserver";
+    }
+}
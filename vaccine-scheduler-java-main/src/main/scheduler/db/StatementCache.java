@@ -0,0 +1,134 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The prepared statements of one pooled connection, keyed by Query and evicted least recently used first.
+// A connection is only ever used by the thread that borrowed it, but eviction and closing can come from the pool,
+// so the cache is still synchronized.
+class StatementCache {
+
+    // counters across every connection
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+    private static final AtomicLong open = new AtomicLong();
+
+    private final Connection con;
+    private final int maxSize;
+    private final Map<Query, Entry> statements;
+
+    StatementCache(Connection con, int maxSize) {
+        this.con = con;
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Query, Entry> eldest) {
+                if (size() <= StatementCache.this.maxSize) {
+                    return false;
+                }
+                evictions.incrementAndGet();
+                Entry entry = eldest.getValue();
+                // a statement still in use is closed when its lease ends
+                if (entry.leased) {
+                    entry.evicted = true;
+                } else {
+                    closeStatement(entry.statement);
+                }
+                return true;
+            }
+        };
+    }
+
+    synchronized CachedStatement lease(Query query) throws SQLException {
+        Entry entry = statements.get(query);
+        if (entry != null && !entry.leased) {
+            hits.incrementAndGet();
+            entry.leased = true;
+            return new CachedStatement(this, entry.statement, entry);
+        }
+        misses.incrementAndGet();
+        PreparedStatement statement = con.prepareStatement(query.getSql());
+        open.incrementAndGet();
+        // the same query twice at once on one connection, or caching turned off: hand out a one-off statement
+        if (entry != null || maxSize == 0) {
+            return new CachedStatement(this, statement, null);
+        }
+        entry = new Entry(statement);
+        entry.leased = true;
+        statements.put(query, entry);
+        return new CachedStatement(this, statement, entry);
+    }
+
+    synchronized void release(PreparedStatement statement, Entry entry) {
+        if (entry == null || entry.evicted) {
+            closeStatement(statement);
+            return;
+        }
+        try {
+            statement.clearParameters();
+            statement.clearBatch();
+            entry.leased = false;
+        } catch (SQLException e) {
+            // a statement that cannot be reset is not safe to reuse
+            statements.values().remove(entry);
+            closeStatement(statement);
+        }
+    }
+
+    // closes every cached statement; called when the connection is discarded
+    synchronized void closeAll() {
+        List<Entry> entries = new ArrayList<>(statements.values());
+        statements.clear();
+        for (Entry entry : entries) {
+            if (entry.leased) {
+                entry.evicted = true;
+            } else {
+                closeStatement(entry.statement);
+            }
+        }
+    }
+
+    private static void closeStatement(PreparedStatement statement) {
+        open.decrementAndGet();
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // the statement is being discarded anyway
+        }
+    }
+
+    static long getHits() {
+        return hits.get();
+    }
+
+    static long getMisses() {
+        return misses.get();
+    }
+
+    static long getEvictions() {
+        return evictions.get();
+    }
+
+    static long getOpenStatements() {
+        return open.get();
+    }
+
+    // a cached statement and its state; a CachedStatement with no Entry is a one-off that is closed on release,
+    // and an evicted entry still on lease is closed when that lease ends
+    static class Entry {
+        private final PreparedStatement statement;
+        private boolean leased = false;
+        private boolean evicted = false;
+
+        private Entry(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+}
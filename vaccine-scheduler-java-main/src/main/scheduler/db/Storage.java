@@ -0,0 +1,18 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Where the scheduler's tables live. ConnectionManager pools the connections a Storage opens.
+//
+// The backend is chosen with the Storage setting (system property or environment variable):
+//   sqlserver (default)  the Azure SQL Server database described by Server, DBName, UserID and Password
+//   embedded             an in-process database created from create.sql on startup, see EmbeddedStorage
+public interface Storage {
+
+    // opens a new physical connection; pooling is the caller's job
+    Connection openConnection() throws SQLException;
+
+    // short name for logs and benchmark results
+    String getName();
+}
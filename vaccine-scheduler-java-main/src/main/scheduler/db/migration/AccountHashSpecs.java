@@ -0,0 +1,31 @@
+package scheduler.db.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// The per-account HashSpec column (see HashSpec); existing rows stay NULL, which means the legacy hash, and are
+// rehashed the next time their owner logs in.
+class AccountHashSpecs implements Migration {
+
+    @Override
+    public int getVersion() {
+        return 3;
+    }
+
+    @Override
+    public String getDescription() {
+        return "HashSpec column on Patients and Caregivers";
+    }
+
+    @Override
+    public void apply(Connection con) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            for (String table : new String[]{"Patients", "Caregivers"}) {
+                if (!SchemaInfo.hasColumn(con, table, "HashSpec")) {
+                    statement.executeUpdate("ALTER TABLE " + table + " ADD HashSpec varchar(64)");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package scheduler.db.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// The ChangeLog table and its sequence, used when ChangeFeed=jdbc (see JdbcChangeFeed).
+class ChangeLogTable implements Migration {
+
+    @Override
+    public int getVersion() {
+        return 5;
+    }
+
+    @Override
+    public String getDescription() {
+        return "ChangeLog table and ChangeLogSeq sequence";
+    }
+
+    @Override
+    public void apply(Connection con) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            if (!SchemaInfo.hasSequence(con, "ChangeLogSeq")) {
+                statement.executeUpdate("CREATE SEQUENCE ChangeLogSeq START WITH 1 INCREMENT BY 1");
+            }
+            if (!SchemaInfo.hasTable(con, "ChangeLog")) {
+                statement.executeUpdate("CREATE TABLE ChangeLog (Seq bigint, Origin varchar(36), Kind varchar(32), " +
+                        "Subject varchar(255), Time date, CreatedAt bigint, PRIMARY KEY (Seq))");
+            }
+        }
+    }
+}
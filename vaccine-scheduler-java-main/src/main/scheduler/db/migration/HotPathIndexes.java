@@ -0,0 +1,47 @@
+package scheduler.db.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Indexes for the predicates the scheduler runs most:
+//   AppointmentsByCaregiver / AppointmentsByPatient  show_appointments' keyset pages (user, appointmentID > ?,
+//                                                    Time range); every selected column is in the key, so a page
+//                                                    is read from the index alone
+//   AppointmentsBySlot                               the "is this caregiver already booked that day" probe in
+//                                                    reserve's CLAIM_SLOT and the availability index reload
+//   AvailabilitiesByTime                             date lookups on Availabilities, only created if no index
+//                                                    (normally the (Time, Username) primary key) leads with Time
+// Key columns rather than INCLUDE columns keep the statements portable; the widest key stays well under SQL
+// Server's 1700-byte limit.
+class HotPathIndexes implements Migration {
+
+    private static final String[][] APPOINTMENT_INDEX_COLUMNS = {
+            {"AppointmentsByCaregiver", "caregiverUsername, appointmentID, Time, vaccineName, patientUsername"},
+            {"AppointmentsByPatient", "patientUsername, appointmentID, Time, vaccineName, caregiverUsername"},
+            {"AppointmentsBySlot", "caregiverUsername, Time"}};
+
+    @Override
+    public int getVersion() {
+        return 2;
+    }
+
+    @Override
+    public String getDescription() {
+        return "covering indexes for appointment lookups and a Time index on Availabilities";
+    }
+
+    @Override
+    public void apply(Connection con) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            for (String[] index : APPOINTMENT_INDEX_COLUMNS) {
+                if (!SchemaInfo.hasIndex(con, "Appointments", index[0])) {
+                    statement.executeUpdate("CREATE INDEX " + index[0] + " ON Appointments (" + index[1] + ")");
+                }
+            }
+            if (!SchemaInfo.hasIndexLeadingWith(con, "Availabilities", "Time")) {
+                statement.executeUpdate("CREATE INDEX AvailabilitiesByTime ON Availabilities (Time, Username)");
+            }
+        }
+    }
+}
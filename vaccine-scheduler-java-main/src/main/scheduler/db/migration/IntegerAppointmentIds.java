@@ -0,0 +1,68 @@
+package scheduler.db.migration;
+
+import scheduler.reservation.AppointmentIdAllocator;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+// Databases created before appointment IDs were numbered by a sequence store appointmentID as varchar(255): every
+// lookup compares strings, MAX(appointmentID) sorts "9" after "10", and the key is several times wider than it needs
+// to be. Converts the column to int and creates the AppointmentIds sequence past the highest existing ID.
+class IntegerAppointmentIds implements Migration {
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public String getDescription() {
+        return "integer appointmentID and the AppointmentIds sequence";
+    }
+
+    @Override
+    public void apply(Connection con) throws SQLException {
+        Integer type = SchemaInfo.columnType(con, "Appointments", "appointmentID");
+        if (type != null && type != Types.INTEGER) {
+            convertColumn(con);
+        }
+        if (!SchemaInfo.hasSequence(con, "AppointmentIds")) {
+            createSequence(con);
+        }
+    }
+
+    private void convertColumn(Connection con) throws SQLException {
+        // the primary key has to go while its column changes type
+        String primaryKey = SchemaInfo.primaryKeyName(con, "Appointments");
+        try (Statement statement = con.createStatement()) {
+            if (primaryKey != null) {
+                statement.executeUpdate("ALTER TABLE Appointments DROP CONSTRAINT " + primaryKey);
+            }
+            try {
+                statement.executeUpdate("ALTER TABLE Appointments ALTER COLUMN appointmentID int NOT NULL");
+            } catch (SQLException e) {
+                throw new SQLException("Appointments.appointmentID holds values that are not whole numbers; " +
+                        "fix them and run the migration again", e);
+            }
+            statement.executeUpdate("ALTER TABLE Appointments ADD CONSTRAINT " +
+                    (primaryKey != null ? primaryKey : "PK_Appointments") + " PRIMARY KEY (appointmentID)");
+        }
+    }
+
+    private void createSequence(Connection con) throws SQLException {
+        int start = 1;
+        try (Statement statement = con.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT MAX(appointmentID) AS maxId FROM Appointments")) {
+                if (resultSet.next()) {
+                    start = resultSet.getInt("maxId") + 1;
+                }
+            }
+            // DDL takes no parameters; start is a number we just read
+            statement.executeUpdate("CREATE SEQUENCE AppointmentIds START WITH " + start +
+                    " INCREMENT BY " + AppointmentIdAllocator.BLOCK_SIZE);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package scheduler.db.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// One numbered step of the schema's history, applied by MigrationRunner in version order.
+//
+// A database created from the current create.sql already has everything every migration adds, so apply() has to
+// look before it changes anything and leave an up-to-date schema alone.
+public interface Migration {
+
+    int getVersion();
+
+    String getDescription();
+
+    // runs inside the runner's transaction; do not commit
+    void apply(Connection con) throws SQLException;
+}
@@ -0,0 +1,119 @@
+package scheduler.db.migration;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.SqlErrors;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Brings the database up to the schema this build expects, one numbered Migration at a time.
+//
+// Applied versions are recorded in the SchemaVersion table, created on first run. Each migration runs in its own
+// transaction together with its SchemaVersion row, so two processes starting at once cannot both record it; the
+// loser's work is rolled back. Where the database commits DDL implicitly (H2, among others) a failed migration can
+// leave part of its work behind, which is why every migration checks what already exists before changing anything:
+// running it again picks up where it stopped.
+//
+// Add new migrations to the end of MIGRATIONS with the next version number, and make the same change to
+// create.sql so new databases start out current.
+public class MigrationRunner {
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new IntegerAppointmentIds(),
+            new HotPathIndexes(),
+            new AccountHashSpecs(),
+            new SessionsTable(),
+            new ChangeLogTable());
+
+    private final Consumer<String> log;
+
+    public MigrationRunner(Consumer<String> log) {
+        this.log = log;
+    }
+
+    // applies every migration the database has not seen yet and returns how many this call applied
+    public int migrate() throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try {
+            createVersionTable(con);
+            Set<Integer> applied = appliedVersions(con);
+            int count = 0;
+            for (Migration migration : MIGRATIONS) {
+                if (!applied.contains(migration.getVersion()) && apply(con, migration)) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+
+    public static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).getVersion();
+    }
+
+    // false if another process applied the migration first
+    private boolean apply(Connection con, Migration migration) throws SQLException {
+        String name = "migration " + migration.getVersion() + " (" + migration.getDescription() + ")";
+        long start = System.currentTimeMillis();
+        con.setAutoCommit(false);
+        try {
+            migration.apply(con);
+            try (PreparedStatement statement = con.prepareStatement(
+                    "INSERT INTO SchemaVersion (Version, Description, AppliedAt, DurationMs) VALUES (?, ?, ?, ?)")) {
+                statement.setInt(1, migration.getVersion());
+                statement.setString(2, migration.getDescription());
+                statement.setLong(3, System.currentTimeMillis());
+                statement.setLong(4, System.currentTimeMillis() - start);
+                statement.executeUpdate();
+            }
+            con.commit();
+            log.accept("Applied " + name + " in " + (System.currentTimeMillis() - start) + " ms");
+            return true;
+        } catch (SQLException e) {
+            con.rollback();
+            if (SqlErrors.isUniqueViolation(e)) {
+                log.accept("Skipped " + name + ", another process applied it");
+                return false;
+            }
+            throw new SQLException("Could not apply " + name, e);
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+
+    private static void createVersionTable(Connection con) throws SQLException {
+        if (SchemaInfo.hasTable(con, "SchemaVersion")) {
+            return;
+        }
+        try (Statement statement = con.createStatement()) {
+            statement.executeUpdate("CREATE TABLE SchemaVersion (Version int, Description varchar(255), " +
+                    "AppliedAt bigint, DurationMs bigint, PRIMARY KEY (Version))");
+        } catch (SQLException e) {
+            // another process may have created it in the meantime
+            if (!SchemaInfo.hasTable(con, "SchemaVersion")) {
+                throw e;
+            }
+        }
+    }
+
+    private static Set<Integer> appliedVersions(Connection con) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement statement = con.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT Version FROM SchemaVersion")) {
+            while (resultSet.next()) {
+                versions.add(resultSet.getInt("Version"));
+            }
+        }
+        return versions;
+    }
+}
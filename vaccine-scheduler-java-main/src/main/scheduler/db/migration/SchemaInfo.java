@@ -0,0 +1,95 @@
+package scheduler.db.migration;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+
+// What the connected database already has, read through JDBC metadata so the checks work on any backend.
+class SchemaInfo {
+
+    private SchemaInfo() {
+    }
+
+    static boolean hasTable(Connection con, String table) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        try (ResultSet resultSet = meta.getTables(null, null, identifier(meta, table), new String[]{"TABLE"})) {
+            return resultSet.next();
+        }
+    }
+
+    // the java.sql.Types code of the column, or null if there is no such column
+    static Integer columnType(Connection con, String table, String column) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        try (ResultSet resultSet = meta.getColumns(null, null, identifier(meta, table), null)) {
+            while (resultSet.next()) {
+                if (resultSet.getString("COLUMN_NAME").equalsIgnoreCase(column)) {
+                    return resultSet.getInt("DATA_TYPE");
+                }
+            }
+        }
+        return null;
+    }
+
+    static boolean hasColumn(Connection con, String table, String column) throws SQLException {
+        return columnType(con, table, column) != null;
+    }
+
+    static boolean hasIndex(Connection con, String table, String index) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        try (ResultSet resultSet = meta.getIndexInfo(null, null, identifier(meta, table), false, true)) {
+            while (resultSet.next()) {
+                String name = resultSet.getString("INDEX_NAME");
+                if (name != null && name.equalsIgnoreCase(index)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // true if some index, the primary key's included, starts with the column
+    static boolean hasIndexLeadingWith(Connection con, String table, String column) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        try (ResultSet resultSet = meta.getIndexInfo(null, null, identifier(meta, table), false, true)) {
+            while (resultSet.next()) {
+                String name = resultSet.getString("COLUMN_NAME");
+                if (resultSet.getShort("ORDINAL_POSITION") == 1 && name != null && name.equalsIgnoreCase(column)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // the name of the table's primary key constraint, or null if it has none
+    static String primaryKeyName(Connection con, String table) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        try (ResultSet resultSet = meta.getPrimaryKeys(null, null, identifier(meta, table))) {
+            return resultSet.next() ? resultSet.getString("PK_NAME") : null;
+        }
+    }
+
+    static boolean hasSequence(Connection con, String sequence) throws SQLException {
+        String sql = "SELECT COUNT(*) AS matches FROM INFORMATION_SCHEMA.SEQUENCES WHERE UPPER(SEQUENCE_NAME) = ?";
+        try (PreparedStatement statement = con.prepareStatement(sql)) {
+            statement.setString(1, sequence.toUpperCase(Locale.ROOT));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getInt("matches") > 0;
+            }
+        }
+    }
+
+    // metadata lookups match names exactly, so spell an unquoted identifier the way the database stores it
+    private static String identifier(DatabaseMetaData meta, String name) throws SQLException {
+        if (meta.storesUpperCaseIdentifiers()) {
+            return name.toUpperCase(Locale.ROOT);
+        }
+        if (meta.storesLowerCaseIdentifiers()) {
+            return name.toLowerCase(Locale.ROOT);
+        }
+        return name;
+    }
+}
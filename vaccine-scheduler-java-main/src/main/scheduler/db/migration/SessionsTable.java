@@ -0,0 +1,30 @@
+package scheduler.db.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// The table SessionStore keeps login sessions in when SessionPersist=true.
+class SessionsTable implements Migration {
+
+    @Override
+    public int getVersion() {
+        return 4;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Sessions table";
+    }
+
+    @Override
+    public void apply(Connection con) throws SQLException {
+        if (SchemaInfo.hasTable(con, "Sessions")) {
+            return;
+        }
+        try (Statement statement = con.createStatement()) {
+            statement.executeUpdate("CREATE TABLE Sessions (TokenDigest varchar(64), Role varchar(16), " +
+                    "Username varchar(255), ExpiresAt bigint, PRIMARY KEY (TokenDigest))");
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package scheduler.feed;
+
+import java.sql.Date;
+
+// One write another Scheduler instance may have cached state about. Changes say what happened, not the new
+// state, so applying one never needs more than the subject and the date.
+public class Change {
+
+    public enum Kind {
+        // subject: caregiver, time: the uploaded day
+        AVAILABILITY_ADDED,
+        // many days at once (bulk upload); subject and time are null and receivers reload their index
+        AVAILABILITIES_ADDED,
+        // subject: caregiver, time: the day that was booked
+        SLOT_BOOKED,
+        // subject: caregiver, time: the day a cancellation gave back
+        SLOT_RELEASED,
+        // subject: vaccine, or null for a restock of several; receivers reload the whole inventory either way
+        DOSES_CHANGED,
+        // subject: SHA-256 digest of the token, as stored in Sessions
+        SESSION_REVOKED
+    }
+
+    private final Kind kind;
+    private final String subject;
+    private final Date time;
+
+    public Change(Kind kind, String subject, Date time) {
+        this.kind = kind;
+        this.subject = subject;
+        this.time = time;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    // null unless the kind is about a day
+    public Date getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + subject + (time != null ? " " + time : "");
+    }
+}
@@ -0,0 +1,15 @@
+package scheduler.feed;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+// An ordered log of changes shared by every Scheduler instance, see ChangeFeedManager.
+public interface ChangeFeed {
+
+    // records the change as part of con's current transaction, so other instances only see it if that commits
+    void publish(Connection con, Change change) throws SQLException;
+
+    // changes published by other instances since the last poll, oldest first
+    List<Change> poll() throws SQLException;
+}
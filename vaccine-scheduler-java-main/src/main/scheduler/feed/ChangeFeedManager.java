@@ -0,0 +1,136 @@
+package scheduler.feed;
+
+import scheduler.auth.SessionStore;
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineInventory;
+import scheduler.reservation.CaregiverLoad;
+import scheduler.reservation.Waitlist;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the per-process caches (AvailabilityIndex, VaccineInventory, CaregiverLoad, SessionStore) in step when
+// several Scheduler instances share one database.
+//
+// Writers publish a Change in the same transaction as the write they describe; the "change-feed-tailer" thread
+// polls the feed every ChangeFeedPollMs (default 200) and patches local state with what other instances did.
+// The feed is chosen with the ChangeFeed setting:
+//   off (default)  a single instance; nothing is published and the caches' own periodic reloads are the only sync
+//   jdbc           the ChangeLog table, see JdbcChangeFeed
+// Tests can install a LocalChangeFeed with setFeed(). The periodic reloads stay on either way and remain the
+// backstop for anything the feed misses.
+public class ChangeFeedManager {
+
+    private static final ChangeFeedManager INSTANCE = new ChangeFeedManager();
+
+    private final long pollMs = Math.max(10, Util.getIntSetting("ChangeFeedPollMs", 200));
+
+    private volatile ChangeFeed feed = selectFeed();
+    private ScheduledExecutorService tailer = null;
+
+    private ChangeFeedManager() {
+    }
+
+    public static ChangeFeedManager getInstance() {
+        return INSTANCE;
+    }
+
+    private static ChangeFeed selectFeed() {
+        String name = Util.getSetting("ChangeFeed");
+        if (name == null || name.equalsIgnoreCase("off")) {
+            return null;
+        }
+        if (name.toLowerCase(Locale.ROOT).equals("jdbc")) {
+            return new JdbcChangeFeed();
+        }
+        throw new IllegalStateException("Unknown ChangeFeed setting: " + name);
+    }
+
+    public ChangeFeed getFeed() {
+        return feed;
+    }
+
+    // replaces the feed, e.g. with a LocalChangeFeed in tests; null turns publishing off
+    public void setFeed(ChangeFeed feed) {
+        this.feed = feed;
+    }
+
+    // records a change as part of con's transaction; does nothing when the feed is off
+    public void publish(Connection con, Change change) throws SQLException {
+        ChangeFeed current = feed;
+        if (current != null) {
+            current.publish(con, change);
+        }
+    }
+
+    // starts tailing the feed; safe to call more than once
+    public synchronized void start() {
+        if (tailer != null) {
+            return;
+        }
+        tailer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "change-feed-tailer");
+            t.setDaemon(true);
+            return t;
+        });
+        tailer.scheduleWithFixedDelay(() -> {
+            try {
+                tail();
+            } catch (SQLException e) {
+                System.out.println("Failed to read the change feed, will retry");
+                e.printStackTrace();
+            }
+        }, pollMs, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    // applies every change other instances published since the last call and returns how many there were
+    public int tail() throws SQLException {
+        ChangeFeed current = feed;
+        if (current == null) {
+            return 0;
+        }
+        List<Change> changes = current.poll();
+        for (Change change : changes) {
+            apply(change);
+        }
+        return changes.size();
+    }
+
+    private void apply(Change change) throws SQLException {
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        switch (change.getKind()) {
+            case AVAILABILITY_ADDED:
+                index.addAvailability(change.getTime(), change.getSubject());
+                Waitlist.getInstance().capacityAdded();
+                break;
+            case AVAILABILITIES_ADDED:
+                index.reload();
+                Waitlist.getInstance().capacityAdded();
+                break;
+            case SLOT_BOOKED:
+                index.removeAvailability(change.getTime(), change.getSubject());
+                CaregiverLoad.getInstance().booked(change.getSubject());
+                break;
+            case SLOT_RELEASED:
+                index.addAvailability(change.getTime(), change.getSubject());
+                CaregiverLoad.getInstance().released(change.getSubject());
+                Waitlist.getInstance().capacityAdded();
+                break;
+            case DOSES_CHANGED:
+                VaccineInventory.getInstance().reload();
+                Waitlist.getInstance().capacityAdded();
+                break;
+            case SESSION_REVOKED:
+                SessionStore.getInstance().forget(change.getSubject());
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package scheduler.feed;
+
+import scheduler.db.CachedStatement;
+import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+
+// The change feed kept in the ChangeLog table, numbered by the ChangeLogSeq sequence.
+//
+// Each instance tails the table by sequence number: every poll reads the rows after the last one it has seen.
+// Numbers are taken when a change is published but rows appear when their transaction commits, so a poll can see
+// 7 before 6 has committed. Skipped numbers are remembered as gaps and looked for again on every poll for
+// ChangeFeedGapMs (default 10000), which must be longer than any writing transaction; after that they are taken to
+// have been rolled back.
+// Rows older than ChangeLogRetentionSec (default 3600) are purged by whichever instance gets there first.
+public class JdbcChangeFeed implements ChangeFeed {
+
+    // rows read per poll
+    private static final int BATCH = 1000;
+    // a jump larger than this is not tracked as gaps (e.g. a sequence cache lost in a restart)
+    private static final int MAX_GAPS = 10_000;
+    private static final long PURGE_INTERVAL_MS = 60_000;
+
+    // marks this instance's own rows, which it has already applied
+    private final String origin = UUID.randomUUID().toString();
+    private final long gapMs = Math.max(0, Util.getIntSetting("ChangeFeedGapMs", 10_000));
+    private final long retentionMs = Math.max(60, Util.getIntSetting("ChangeLogRetentionSec", 3600)) * 1000L;
+
+    // highest sequence number seen, or -1 before the first poll
+    private long cursor = -1;
+    // skipped sequence number -> when it was first missed
+    private final TreeMap<Long, Long> gaps = new TreeMap<>();
+    private long purgedAt = System.currentTimeMillis();
+
+    @Override
+    public void publish(Connection con, Change change) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        try (CachedStatement cached = cm.prepare(con, Query.INSERT_CHANGE)) {
+            PreparedStatement statement = cached.getStatement();
+            statement.setString(1, origin);
+            statement.setString(2, change.getKind().name());
+            statement.setString(3, change.getSubject());
+            statement.setDate(4, change.getTime());
+            statement.setLong(5, System.currentTimeMillis());
+            statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public synchronized List<Change> poll() throws SQLException {
+        List<Change> changes = new ArrayList<>();
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try {
+            if (cursor < 0) {
+                // state loaded at startup already reflects everything before now
+                cursor = latest(con);
+                return changes;
+            }
+            long now = System.currentTimeMillis();
+            gaps.values().removeIf(missedAt -> now - missedAt > gapMs);
+            if (!gaps.isEmpty()) {
+                try (CachedStatement cached = cm.prepare(con, Query.CHANGES_BETWEEN)) {
+                    PreparedStatement statement = cached.getStatement();
+                    statement.setLong(1, gaps.firstKey());
+                    statement.setLong(2, gaps.lastKey());
+                    read(statement, changes, now);
+                }
+            }
+            try (CachedStatement cached = cm.prepare(con, Query.CHANGES_AFTER)) {
+                PreparedStatement statement = cached.getStatement();
+                statement.setLong(1, cursor);
+                statement.setInt(2, BATCH);
+                read(statement, changes, now);
+            }
+            if (now - purgedAt > PURGE_INTERVAL_MS) {
+                purge(con, now - retentionMs);
+                purgedAt = now;
+            }
+        } finally {
+            cm.returnConnection(con);
+        }
+        return changes;
+    }
+
+    private void read(PreparedStatement statement, List<Change> changes, long now) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                long seq = resultSet.getLong("Seq");
+                if (seq <= cursor) {
+                    // a late commit filling a gap; anything else at or below the cursor was seen before
+                    if (gaps.remove(seq) == null) {
+                        continue;
+                    }
+                } else {
+                    if (seq - cursor - 1 <= MAX_GAPS) {
+                        for (long missing = cursor + 1; missing < seq; missing++) {
+                            gaps.put(missing, now);
+                        }
+                    }
+                    cursor = seq;
+                }
+                if (!origin.equals(resultSet.getString("Origin"))) {
+                    changes.add(new Change(Change.Kind.valueOf(resultSet.getString("Kind")),
+                            resultSet.getString("Subject"), resultSet.getDate("Time")));
+                }
+            }
+        }
+    }
+
+    private static long latest(Connection con) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        try (CachedStatement cached = cm.prepare(con, Query.LATEST_CHANGE)) {
+            try (ResultSet resultSet = cached.getStatement().executeQuery()) {
+                return resultSet.next() ? resultSet.getLong("latest") : 0;
+            }
+        }
+    }
+
+    private static void purge(Connection con, long before) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        try (CachedStatement cached = cm.prepare(con, Query.DELETE_OLD_CHANGES)) {
+            PreparedStatement statement = cached.getStatement();
+            statement.setLong(1, before);
+            statement.executeUpdate();
+        }
+    }
+}
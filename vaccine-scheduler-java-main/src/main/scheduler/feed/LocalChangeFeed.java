@@ -0,0 +1,69 @@
+package scheduler.feed;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+// An in-process stand-in for JdbcChangeFeed, for tests and single-machine experiments.
+//
+// Each LocalChangeFeed plays one Scheduler instance; peer() gives another instance reading and writing the same
+// log, the way two processes share the ChangeLog table. Changes are visible to peers as soon as they are
+// published, whether or not the caller's transaction commits.
+//
+//     LocalChangeFeed node1 = new LocalChangeFeed();
+//     LocalChangeFeed node2 = node1.peer();
+//     node1.publish(null, change);
+//     node2.poll();   // [change]
+public class LocalChangeFeed implements ChangeFeed {
+
+    private final List<Published> log;
+    private int cursor = 0;
+
+    public LocalChangeFeed() {
+        this(new ArrayList<>());
+    }
+
+    private LocalChangeFeed(List<Published> log) {
+        this.log = log;
+    }
+
+    // another instance on the same log; it only sees changes published from now on
+    public LocalChangeFeed peer() {
+        LocalChangeFeed peer = new LocalChangeFeed(log);
+        synchronized (log) {
+            peer.cursor = log.size();
+        }
+        return peer;
+    }
+
+    @Override
+    public void publish(Connection con, Change change) {
+        synchronized (log) {
+            log.add(new Published(this, change));
+        }
+    }
+
+    @Override
+    public List<Change> poll() {
+        List<Change> changes = new ArrayList<>();
+        synchronized (log) {
+            for (; cursor < log.size(); cursor++) {
+                Published published = log.get(cursor);
+                if (published.origin != this) {
+                    changes.add(published.change);
+                }
+            }
+        }
+        return changes;
+    }
+
+    private static class Published {
+        private final LocalChangeFeed origin;
+        private final Change change;
+
+        private Published(LocalChangeFeed origin, Change change) {
+            this.origin = origin;
+            this.change = change;
+        }
+    }
+}
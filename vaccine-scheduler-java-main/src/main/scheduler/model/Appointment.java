@@ -0,0 +1,72 @@
+package scheduler.model;
+
+import java.sql.Date;
+
+public class Appointment {
+    private final int appointmentId;
+    private final Date time;
+    private final String caregiverUsername;
+    private final String patientUsername;
+    private final String vaccineName;
+
+    private Appointment(AppointmentBuilder builder) {
+        this.appointmentId = builder.appointmentId;
+        this.time = builder.time;
+        this.caregiverUsername = builder.caregiverUsername;
+        this.patientUsername = builder.patientUsername;
+        this.vaccineName = builder.vaccineName;
+    }
+
+    // Getters
+    public int getAppointmentId() {
+        return appointmentId;
+    }
+
+    public Date getTime() {
+        return time;
+    }
+
+    public String getCaregiverUsername() {
+        return caregiverUsername;
+    }
+
+    public String getPatientUsername() {
+        return patientUsername;
+    }
+
+    public String getVaccineName() {
+        return vaccineName;
+    }
+
+    @Override
+    public String toString() {
+        return "Appointment{" +
+                "appointmentId=" + appointmentId +
+                ", time=" + time +
+                ", caregiverUsername='" + caregiverUsername + '\'' +
+                ", patientUsername='" + patientUsername + '\'' +
+                ", vaccineName='" + vaccineName + '\'' +
+                '}';
+    }
+
+    public static class AppointmentBuilder {
+        private final int appointmentId;
+        private final Date time;
+        private final String caregiverUsername;
+        private final String patientUsername;
+        private final String vaccineName;
+
+        public AppointmentBuilder(int appointmentId, Date time, String caregiverUsername,
+                                  String patientUsername, String vaccineName) {
+            this.appointmentId = appointmentId;
+            this.time = time;
+            this.caregiverUsername = caregiverUsername;
+            this.patientUsername = patientUsername;
+            this.vaccineName = vaccineName;
+        }
+
+        public Appointment build() {
+            return new Appointment(this);
+        }
+    }
+}
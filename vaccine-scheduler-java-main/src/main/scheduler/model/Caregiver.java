@@ -1,26 +1,40 @@
 package scheduler.model;
 
+import scheduler.bulk.AvailabilityLoader;
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.UnknownUsernameCache;
+import scheduler.db.CachedStatement;
 import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+import scheduler.db.SqlErrors;
+import scheduler.feed.Change;
+import scheduler.feed.ChangeFeedManager;
+import scheduler.util.HashSpec;
 import scheduler.util.Util;
 
 import java.sql.*;
-import java.util.Arrays;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Set;
 
 public class Caregiver {
     private final String username;
     private final byte[] salt;
     private final byte[] hash;
+    private final HashSpec hashSpec;
 
     private Caregiver(CaregiverBuilder builder) {
         this.username = builder.username;
         this.salt = builder.salt;
         this.hash = builder.hash;
+        this.hashSpec = builder.hashSpec;
     }
 
     private Caregiver(CaregiverGetter getter) {
         this.username = getter.username;
         this.salt = getter.salt;
         this.hash = getter.hash;
+        this.hashSpec = getter.hashSpec;
     }
 
     // Getters
@@ -36,38 +50,70 @@ public class Caregiver {
         return hash;
     }
 
-    public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    public HashSpec getHashSpec() {
+        return hashSpec;
+    }
 
-        String addCaregiver = "INSERT INTO Caregivers VALUES (? , ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addCaregiver);
+    // Inserts the caregiver and returns false if the username is already taken.
+    // The primary key on Username is the uniqueness check, so this is one round trip and two clients can never
+    // both create the same username.
+    public boolean saveToDB() throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+
+        try (CachedStatement cached = cm.prepare(con, Query.INSERT_CAREGIVER)) {
+            PreparedStatement statement = cached.getStatement();
             statement.setString(1, this.username);
             statement.setBytes(2, this.salt);
             statement.setBytes(3, this.hash);
+            statement.setString(4, this.hashSpec.toString());
             statement.executeUpdate();
+            UnknownUsernameCache.CAREGIVERS.invalidate(this.username);
+            return true;
         } catch (SQLException e) {
+            if (SqlErrors.isUniqueViolation(e)) {
+                return false;
+            }
             throw new SQLException();
         } finally {
-            cm.closeConnection();
+            cm.returnConnection(con);
         }
     }
 
     public void uploadAvailability(Date d) throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
 
-        String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
         try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, this.username);
-            statement.executeUpdate();
+            con.setAutoCommit(false);
+            try (CachedStatement cached = cm.prepare(con, Query.INSERT_AVAILABILITY)) {
+                PreparedStatement statement = cached.getStatement();
+                statement.setDate(1, d);
+                statement.setString(2, this.username);
+                statement.executeUpdate();
+            }
+            ChangeFeedManager.getInstance().publish(con, new Change(Change.Kind.AVAILABILITY_ADDED, this.username, d));
+            con.commit();
         } catch (SQLException e) {
             throw new SQLException();
         } finally {
-            cm.closeConnection();
+            cm.returnConnection(con);
+        }
+        AvailabilityIndex.getInstance().addAvailability(d, this.username);
+    }
+
+    // Uploads availability for every day from start to end (inclusive) that falls on one of the given weekdays.
+    // Days that are already uploaded are skipped.
+    public AvailabilityLoader.Summary uploadAvailabilityRange(Date start, Date end, Set<DayOfWeek> weekdays)
+            throws SQLException {
+        try (AvailabilityLoader loader = new AvailabilityLoader()) {
+            LocalDate last = end.toLocalDate();
+            for (LocalDate day = start.toLocalDate(); !day.isAfter(last); day = day.plusDays(1)) {
+                if (weekdays.contains(day.getDayOfWeek())) {
+                    loader.add(Date.valueOf(day), this.username);
+                }
+            }
+            return loader.finish();
         }
     }
 
@@ -75,11 +121,13 @@ public class Caregiver {
         private final String username;
         private final byte[] salt;
         private final byte[] hash;
+        private final HashSpec hashSpec;
 
-        public CaregiverBuilder(String username, byte[] salt, byte[] hash) {
+        public CaregiverBuilder(String username, byte[] salt, byte[] hash, HashSpec hashSpec) {
             this.username = username;
             this.salt = salt;
             this.hash = hash;
+            this.hashSpec = hashSpec;
         }
 
         public Caregiver build() {
@@ -92,6 +140,7 @@ public class Caregiver {
         private final String password;
         private byte[] salt;
         private byte[] hash;
+        private HashSpec hashSpec;
 
         public CaregiverGetter(String username, String password) {
             this.username = username;
@@ -99,34 +148,82 @@ public class Caregiver {
         }
 
         public Caregiver get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getCaregiver = "SELECT Salt, Hash FROM Caregivers WHERE Username = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getCaregiver);
+            // usernames found missing a moment ago are refused without a round trip
+            UnknownUsernameCache unknown = UnknownUsernameCache.CAREGIVERS;
+            if (unknown.isKnownMissing(this.username)) {
+                return null;
+            }
+            // the connection is only held for the lookup; hashing takes far longer and needs no database
+            byte[] salt = null;
+            byte[] hash = null;
+            HashSpec spec = null;
+            ConnectionManager cm = ConnectionManager.getInstance();
+            Connection con = cm.borrowConnection();
+
+            try (CachedStatement cached = cm.prepare(con, Query.FIND_CAREGIVER)) {
+                PreparedStatement statement = cached.getStatement();
                 statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Caregiver(this);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        salt = resultSet.getBytes("Salt");
+                        hash = resultSet.getBytes("Hash");
+                        spec = HashSpec.parse(resultSet.getString("HashSpec"));
                     }
                 }
-                return null;
             } catch (SQLException e) {
                 throw new SQLException();
             } finally {
-                cm.closeConnection();
+                cm.returnConnection(con);
+            }
+            if (spec == null) {
+                unknown.recordMissing(this.username);
+                return null;
+            }
+            // check if the password matches, hashing it the same way the stored hash was made
+            byte[] calculatedHash = Util.generateHash(password, salt, spec);
+            if (!Util.hashMatches(hash, calculatedHash)) {
+                return null;
+            }
+            this.salt = salt;
+            this.hash = hash;
+            this.hashSpec = spec;
+            if (!spec.equals(HashSpec.current())) {
+                rehash();
+            }
+            return new Caregiver(this);
+        }
+
+        // Now that the password is known, upgrade the stored hash to the current spec.
+        // Guarded by the old salt so a concurrent password change is never overwritten; on failure the old hash
+        // stays valid and the next login tries again. The new hash is computed before a connection is borrowed.
+        private void rehash() {
+            HashSpec spec = HashSpec.current();
+            byte[] newSalt = Util.generateSalt();
+            byte[] newHash = Util.generateHash(password, newSalt, spec);
+            ConnectionManager cm = ConnectionManager.getInstance();
+            Connection con;
+            try {
+                con = cm.borrowConnection();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return;
+            }
+            try (CachedStatement cached = cm.prepare(con, Query.REHASH_CAREGIVER)) {
+                PreparedStatement statement = cached.getStatement();
+                statement.setBytes(1, newSalt);
+                statement.setBytes(2, newHash);
+                statement.setString(3, spec.toString());
+                statement.setString(4, this.username);
+                statement.setBytes(5, this.salt);
+                if (statement.executeUpdate() == 1) {
+                    this.salt = newSalt;
+                    this.hash = newHash;
+                    this.hashSpec = spec;
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                cm.returnConnection(con);
             }
         }
     }
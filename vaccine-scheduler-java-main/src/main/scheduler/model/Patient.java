@@ -1,26 +1,33 @@
 package scheduler.model;
 
+import scheduler.cache.UnknownUsernameCache;
+import scheduler.db.CachedStatement;
 import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+import scheduler.db.SqlErrors;
+import scheduler.util.HashSpec;
 import scheduler.util.Util;
 
 import java.sql.*;
-import java.util.Arrays;
 
 public class Patient {
     private final String username;
     private final byte[] salt;
     private final byte[] hash;
+    private final HashSpec hashSpec;
 
     private Patient(PatientBuilder builder) {
         this.username = builder.username;
         this.salt = builder.salt;
         this.hash = builder.hash;
+        this.hashSpec = builder.hashSpec;
     }
 
     private Patient(PatientGetter getter) {
         this.username = getter.username;
         this.salt = getter.salt;
         this.hash = getter.hash;
+        this.hashSpec = getter.hashSpec;
     }
 
     // Getters
@@ -36,21 +43,33 @@ public class Patient {
         return hash;
     }
 
-    public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    public HashSpec getHashSpec() {
+        return hashSpec;
+    }
+
+    // Inserts the patient and returns false if the username is already taken.
+    // The primary key on Username is the uniqueness check, so this is one round trip and two clients can never
+    // both create the same username.
+    public boolean saveToDB() throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
 
-        String addPatient = "INSERT INTO Patients VALUES (? , ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addPatient);
+        try (CachedStatement cached = cm.prepare(con, Query.INSERT_PATIENT)) {
+            PreparedStatement statement = cached.getStatement();
             statement.setString(1, this.username);
             statement.setBytes(2, this.salt);
             statement.setBytes(3, this.hash);
+            statement.setString(4, this.hashSpec.toString());
             statement.executeUpdate();
+            UnknownUsernameCache.PATIENTS.invalidate(this.username);
+            return true;
         } catch (SQLException e) {
+            if (SqlErrors.isUniqueViolation(e)) {
+                return false;
+            }
             throw new SQLException();
         } finally {
-            cm.closeConnection();
+            cm.returnConnection(con);
         }
     }
 
@@ -58,11 +77,13 @@ public class Patient {
         private final String username;
         private final byte[] salt;
         private final byte[] hash;
+        private final HashSpec hashSpec;
 
-        public PatientBuilder(String username, byte[] salt, byte[] hash) {
+        public PatientBuilder(String username, byte[] salt, byte[] hash, HashSpec hashSpec) {
             this.username = username;
             this.salt = salt;
             this.hash = hash;
+            this.hashSpec = hashSpec;
         }
 
         public Patient build() {
@@ -75,6 +96,7 @@ public class Patient {
         private final String password;
         private byte[] salt;
         private byte[] hash;
+        private HashSpec hashSpec;
 
         public PatientGetter(String username, String password) {
             this.username = username;
@@ -82,34 +104,82 @@ public class Patient {
         }
 
         public Patient get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getPatient = "SELECT Salt, Hash FROM Patients WHERE Username = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getPatient);
+            // usernames found missing a moment ago are refused without a round trip
+            UnknownUsernameCache unknown = UnknownUsernameCache.PATIENTS;
+            if (unknown.isKnownMissing(this.username)) {
+                return null;
+            }
+            // the connection is only held for the lookup; hashing takes far longer and needs no database
+            byte[] salt = null;
+            byte[] hash = null;
+            HashSpec spec = null;
+            ConnectionManager cm = ConnectionManager.getInstance();
+            Connection con = cm.borrowConnection();
+
+            try (CachedStatement cached = cm.prepare(con, Query.FIND_PATIENT)) {
+                PreparedStatement statement = cached.getStatement();
                 statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Patient(this);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        salt = resultSet.getBytes("Salt");
+                        hash = resultSet.getBytes("Hash");
+                        spec = HashSpec.parse(resultSet.getString("HashSpec"));
                     }
                 }
-                return null;
             } catch (SQLException e) {
                 throw new SQLException();
             } finally {
-                cm.closeConnection();
+                cm.returnConnection(con);
+            }
+            if (spec == null) {
+                unknown.recordMissing(this.username);
+                return null;
+            }
+            // check if the password matches, hashing it the same way the stored hash was made
+            byte[] calculatedHash = Util.generateHash(password, salt, spec);
+            if (!Util.hashMatches(hash, calculatedHash)) {
+                return null;
+            }
+            this.salt = salt;
+            this.hash = hash;
+            this.hashSpec = spec;
+            if (!spec.equals(HashSpec.current())) {
+                rehash();
+            }
+            return new Patient(this);
+        }
+
+        // Now that the password is known, upgrade the stored hash to the current spec.
+        // Guarded by the old salt so a concurrent password change is never overwritten; on failure the old hash
+        // stays valid and the next login tries again. The new hash is computed before a connection is borrowed.
+        private void rehash() {
+            HashSpec spec = HashSpec.current();
+            byte[] newSalt = Util.generateSalt();
+            byte[] newHash = Util.generateHash(password, newSalt, spec);
+            ConnectionManager cm = ConnectionManager.getInstance();
+            Connection con;
+            try {
+                con = cm.borrowConnection();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return;
+            }
+            try (CachedStatement cached = cm.prepare(con, Query.REHASH_PATIENT)) {
+                PreparedStatement statement = cached.getStatement();
+                statement.setBytes(1, newSalt);
+                statement.setBytes(2, newHash);
+                statement.setString(3, spec.toString());
+                statement.setString(4, this.username);
+                statement.setBytes(5, this.salt);
+                if (statement.executeUpdate() == 1) {
+                    this.salt = newSalt;
+                    this.hash = newHash;
+                    this.hashSpec = spec;
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                cm.returnConnection(con);
             }
         }
     }
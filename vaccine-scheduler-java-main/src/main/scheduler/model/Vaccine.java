@@ -1,11 +1,19 @@
 package scheduler.model;
 
+import scheduler.cache.VaccineInventory;
+import scheduler.db.CachedStatement;
 import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+import scheduler.feed.Change;
+import scheduler.feed.ChangeFeedManager;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public class Vaccine {
     private final String vaccineName;
@@ -31,20 +39,25 @@ public class Vaccine {
     }
 
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
 
-        String addDoses = "INSERT INTO vaccines VALUES (?, ?)";
         try {
-            PreparedStatement statement = con.prepareStatement(addDoses);
-            statement.setString(1, this.vaccineName);
-            statement.setInt(2, this.availableDoses);
-            statement.executeUpdate();
+            con.setAutoCommit(false);
+            try (CachedStatement cached = cm.prepare(con, Query.INSERT_VACCINE)) {
+                PreparedStatement statement = cached.getStatement();
+                statement.setString(1, this.vaccineName);
+                statement.setInt(2, this.availableDoses);
+                statement.executeUpdate();
+            }
+            ChangeFeedManager.getInstance().publish(con, new Change(Change.Kind.DOSES_CHANGED, this.vaccineName, null));
+            con.commit();
         } catch (SQLException e) {
             throw new SQLException();
         } finally {
-            cm.closeConnection();
+            cm.returnConnection(con);
         }
+        VaccineInventory.getInstance().applied(this.vaccineName, this.availableDoses);
     }
 
     // Increment the available doses
@@ -52,43 +65,117 @@ public class Vaccine {
         if (num <= 0) {
             throw new IllegalArgumentException("Argument cannot be negative!");
         }
-        this.availableDoses += num;
+        this.availableDoses = applyDelta(num);
+    }
 
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    // Decrement the available doses
+    public void decreaseAvailableDoses(int num) throws SQLException {
+        if (num <= 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
+        }
+        this.availableDoses = applyDelta(-num);
+    }
+
+    // Applies delta to the stored dose count and returns the new count.
+    // The change is relative (Doses = Doses + ?), so concurrent add_doses calls and bookings, from this or other
+    // processes, are never overwritten; the guard rejects any change that would go below zero.
+    // The read-back runs in the same transaction while the UPDATE still holds the row lock, so it sees exactly
+    // the value this update produced.
+    private int applyDelta(int delta) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
 
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
         try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
+            con.setAutoCommit(false);
+            try (CachedStatement cached = cm.prepare(con, Query.ADD_DOSES_GUARDED)) {
+                PreparedStatement statement = cached.getStatement();
+                statement.setInt(1, delta);
+                statement.setString(2, this.vaccineName);
+                statement.setInt(3, delta);
+                if (statement.executeUpdate() == 0) {
+                    con.rollback();
+                    throw new IllegalArgumentException("Not enough available doses!");
+                }
+            }
+            int doses;
+            try (CachedStatement cached = cm.prepare(con, Query.FIND_VACCINE)) {
+                PreparedStatement statement = cached.getStatement();
+                statement.setString(1, this.vaccineName);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    doses = resultSet.getInt("Doses");
+                }
+            }
+            ChangeFeedManager.getInstance().publish(con, new Change(Change.Kind.DOSES_CHANGED, this.vaccineName, null));
+            con.commit();
+            VaccineInventory.getInstance().applied(this.vaccineName, delta);
+            return doses;
         } catch (SQLException e) {
             throw new SQLException();
         } finally {
-            cm.closeConnection();
+            cm.returnConnection(con);
         }
     }
 
-    // Decrement the available doses
-    public void decreaseAvailableDoses(int num) throws SQLException {
-        if (this.availableDoses - num < 0) {
-            throw new IllegalArgumentException("Not enough available doses!");
+    // Adds doses to many vaccines at once, e.g. a restock from the supply feed.
+    // All existing vaccines are updated with one JDBC batch and any new ones are inserted with a second batch,
+    // in a single transaction, so a restock costs the same few round trips no matter how many vaccines it covers.
+    // Once it has committed, one DOSES_CHANGED change announces the whole restock to other instances.
+    public static void addDosesInBulk(Map<String, Integer> doses) throws SQLException {
+        for (Map.Entry<String, Integer> entry : doses.entrySet()) {
+            if (entry.getValue() <= 0) {
+                throw new IllegalArgumentException("Argument cannot be negative!");
+            }
+        }
+        if (doses.isEmpty()) {
+            return;
         }
-        this.availableDoses -= num;
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+        List<String> names = new ArrayList<>(doses.keySet());
+
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
 
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
         try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
+            con.setAutoCommit(false);
+            List<String> newVaccines = new ArrayList<>();
+            try (CachedStatement cached = cm.prepare(con, Query.ADD_DOSES)) {
+                PreparedStatement statement = cached.getStatement();
+                for (String name : names) {
+                    statement.setInt(1, doses.get(name));
+                    statement.setString(2, name);
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) {
+                        newVaccines.add(names.get(i));
+                    }
+                }
+            }
+            if (!newVaccines.isEmpty()) {
+                try (CachedStatement cached = cm.prepare(con, Query.INSERT_VACCINE)) {
+                    PreparedStatement statement = cached.getStatement();
+                    for (String name : newVaccines) {
+                        statement.setString(1, name);
+                        statement.setInt(2, doses.get(name));
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+            con.commit();
+
+            VaccineInventory inventory = VaccineInventory.getInstance();
+            for (String name : names) {
+                inventory.applied(name, doses.get(name));
+            }
+            // receivers reload the whole inventory whatever the subject, so one change covers every vaccine
+            ChangeFeedManager.getInstance().publish(con, new Change(Change.Kind.DOSES_CHANGED, null, null));
+            con.commit();
         } catch (SQLException e) {
             throw new SQLException();
         } finally {
-            cm.closeConnection();
+            cm.returnConnection(con);
         }
     }
 
@@ -123,23 +210,30 @@ public class Vaccine {
         }
 
         public Vaccine get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
+            // answer from the inventory cache when this process already knows the vaccine
+            Integer cachedDoses = VaccineInventory.getInstance().getDoses(this.vaccineName);
+            if (cachedDoses != null) {
+                this.availableDoses = cachedDoses;
+                return new Vaccine(this);
+            }
+
+            ConnectionManager cm = ConnectionManager.getInstance();
+            Connection con = cm.borrowConnection();
 
-            String getVaccine = "SELECT Name, Doses FROM Vaccines WHERE Name = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getVaccine);
+            try (CachedStatement cached = cm.prepare(con, Query.FIND_VACCINE)) {
+                PreparedStatement statement = cached.getStatement();
                 statement.setString(1, this.vaccineName);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    this.availableDoses = resultSet.getInt("Doses");
-                    return new Vaccine(this);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        this.availableDoses = resultSet.getInt("Doses");
+                        return new Vaccine(this);
+                    }
                 }
                 return null;
             } catch (SQLException e) {
                 throw new SQLException();
             } finally {
-                cm.closeConnection();
+                cm.returnConnection(con);
             }
         }
     }
@@ -0,0 +1,50 @@
+package scheduler.reservation;
+
+import scheduler.db.CachedStatement;
+import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Hands out appointment IDs using the hi/lo scheme.
+// Each trip to the database reserves a whole block of BLOCK_SIZE IDs from the AppointmentIds sequence, and the
+// process then hands them out from memory. Blocks are never shared between processes, so IDs stay unique across
+// clients without ever scanning the Appointments table. IDs lost when a process exits simply leave gaps.
+public class AppointmentIdAllocator {
+
+    // must match the INCREMENT BY of the AppointmentIds sequence in create.sql and in the IntegerAppointmentIds
+    // migration, which creates the sequence on databases that predate it
+    public static final int BLOCK_SIZE = 50;
+
+    private static final AppointmentIdAllocator INSTANCE = new AppointmentIdAllocator();
+
+    private long next = 0;
+    private long limit = 0;
+
+    private AppointmentIdAllocator() {
+    }
+
+    public static AppointmentIdAllocator getInstance() {
+        return INSTANCE;
+    }
+
+    // con is only used when the current block is used up; the caller keeps ownership of it
+    public synchronized int nextId(Connection con) throws SQLException {
+        if (next >= limit) {
+            long blockStart = fetchBlockStart(con);
+            next = blockStart;
+            limit = blockStart + BLOCK_SIZE;
+        }
+        return Math.toIntExact(next++);
+    }
+
+    private static long fetchBlockStart(Connection con) throws SQLException {
+        try (CachedStatement cached = ConnectionManager.getInstance().prepare(con, Query.NEXT_APPOINTMENT_BLOCK);
+             ResultSet resultSet = cached.getStatement().executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong("blockStart");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package scheduler.reservation;
+
+import scheduler.util.Util;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// The order in which reserve tries a day's free caregivers, chosen with the Assignment setting:
+//   least_loaded (default)  of the next WINDOW caregivers after the day's cursor, fewest upcoming appointments first
+//   round_robin             starting after the caregiver the previous reserve on that day started from
+//   random                  starting at a random free caregiver; costs a pass over the day's free caregivers
+//   first_free              in username order, which always hands out the same few caregivers first
+// Every order goes on to the rest of the day's free caregivers, so a reserve only fails if nobody is free. The
+// cursors move before the claim, so concurrent reservers on one day start at different caregivers instead of
+// queueing on the same Availabilities row.
+public enum Assignment {
+
+    LEAST_LOADED {
+        @Override
+        Iterable<String> candidates(LocalDate day, NavigableSet<String> free) {
+            CaregiverLoad load = CaregiverLoad.getInstance();
+            // the cursor skips the whole window, so concurrent reservers compare different caregivers
+            String start = load.advance(day, free, WINDOW);
+            if (start == null) {
+                return List.of();
+            }
+            // one snapshot of the live set, so the window and the rest can neither overlap nor miss a caregiver
+            // when other reservers change free in between
+            List<String> order = wrapFrom(free, start).collect(Collectors.toList());
+            List<String> window = new ArrayList<>(order.subList(0, Math.min(WINDOW, order.size())));
+            Map<String, Integer> loads = new HashMap<>();
+            for (String caregiver : window) {
+                loads.put(caregiver, load.get(caregiver));
+            }
+            window.sort(Comparator.comparingInt(loads::get));
+            List<String> rest = order.subList(window.size(), order.size());
+            return () -> Stream.concat(window.stream(), rest.stream()).iterator();
+        }
+    },
+
+    ROUND_ROBIN {
+        @Override
+        Iterable<String> candidates(LocalDate day, NavigableSet<String> free) {
+            String start = CaregiverLoad.getInstance().advance(day, free, 1);
+            return start == null ? List.of() : () -> wrapFrom(free, start).iterator();
+        }
+    },
+
+    RANDOM {
+        @Override
+        Iterable<String> candidates(LocalDate day, NavigableSet<String> free) {
+            String[] caregivers = free.toArray(new String[0]);
+            if (caregivers.length == 0) {
+                return List.of();
+            }
+            String start = caregivers[ThreadLocalRandom.current().nextInt(caregivers.length)];
+            return () -> wrapFrom(free, start).iterator();
+        }
+    },
+
+    FIRST_FREE {
+        @Override
+        Iterable<String> candidates(LocalDate day, NavigableSet<String> free) {
+            return free;
+        }
+    };
+
+    // caregivers least_loaded compares on each reserve
+    static final int WINDOW = 8;
+
+    // free is a live view; candidates may be read lazily while other reservers change it
+    abstract Iterable<String> candidates(LocalDate day, NavigableSet<String> free);
+
+    static Assignment fromSetting() {
+        String name = Util.getSetting("Assignment");
+        if (name == null) {
+            return LEAST_LOADED;
+        }
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Unknown Assignment setting: " + name);
+        }
+    }
+
+    // free from start to the end, then from the beginning up to start
+    private static Stream<String> wrapFrom(NavigableSet<String> free, String start) {
+        return Stream.concat(free.tailSet(start, true).stream(), free.headSet(start, false).stream());
+    }
+}
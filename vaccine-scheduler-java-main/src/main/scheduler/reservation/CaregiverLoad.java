@@ -0,0 +1,124 @@
+package scheduler.reservation;
+
+import scheduler.db.CachedStatement;
+import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// In-memory counters behind the assignment strategies (see Assignment):
+//   - upcoming appointments per caregiver, loaded with one grouped query and then kept up to date by reserve and
+//     cancel; reloaded on a background thread every CaregiverLoadRefreshSec (default 300) to pick up other
+//     processes' bookings, so a reserve never waits on that query or borrows a second connection for it
+//   - a cursor per date, the caregiver the last reserve on that date started from
+public class CaregiverLoad {
+
+    private static final CaregiverLoad INSTANCE = new CaregiverLoad();
+
+    // cursors of past dates are dropped once there are this many
+    private static final int MAX_CURSORS = 4096;
+
+    private final long refreshMs = Math.max(1, Util.getIntSetting("CaregiverLoadRefreshSec", 300)) * 1000L;
+
+    private volatile Map<String, AtomicInteger> upcoming = new ConcurrentHashMap<>();
+    private final Map<LocalDate, AtomicReference<String>> cursors = new ConcurrentHashMap<>();
+    private ScheduledExecutorService refresher = null;
+
+    private CaregiverLoad() {
+    }
+
+    public static CaregiverLoad getInstance() {
+        return INSTANCE;
+    }
+
+    // starts the periodic reload and loads the counters; safe to call more than once
+    // (the refresher is scheduled first, so a failed first load is retried in the background)
+    public synchronized void start() throws SQLException {
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "caregiver-load-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        reload();
+    }
+
+    // upcoming appointments of the caregiver, as of the last reload plus this process's bookings since
+    public int get(String caregiverUsername) {
+        AtomicInteger count = upcoming.get(caregiverUsername);
+        return count == null ? 0 : count.get();
+    }
+
+    // write-through after a booking committed
+    public void booked(String caregiverUsername) {
+        upcoming.computeIfAbsent(caregiverUsername, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    // write-through after a cancellation committed
+    public void released(String caregiverUsername) {
+        AtomicInteger count = upcoming.get(caregiverUsername);
+        if (count != null) {
+            count.updateAndGet(n -> Math.max(0, n - 1));
+        }
+    }
+
+    // moves the date's cursor step caregivers forward through free, wrapping around, and returns where this caller
+    // starts; concurrent callers each get their own start
+    String advance(LocalDate day, NavigableSet<String> free, int step) {
+        if (cursors.size() > MAX_CURSORS) {
+            cursors.keySet().removeIf(date -> date.isBefore(LocalDate.now()));
+        }
+        AtomicReference<String> cursor = cursors.computeIfAbsent(day, k -> new AtomicReference<>());
+        return cursor.updateAndGet(last -> {
+            String next = last;
+            for (int i = 0; i < step; i++) {
+                next = next == null ? null : free.higher(next);
+                if (next == null) {
+                    next = free.isEmpty() ? null : free.first();
+                }
+            }
+            return next;
+        });
+    }
+
+    public void reload() throws SQLException {
+        Map<String, AtomicInteger> fresh = new ConcurrentHashMap<>();
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (CachedStatement cached = cm.prepare(con, Query.UPCOMING_PER_CAREGIVER)) {
+            PreparedStatement statement = cached.getStatement();
+            statement.setDate(1, Date.valueOf(LocalDate.now()));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    fresh.put(resultSet.getString("caregiverUsername"), new AtomicInteger(resultSet.getInt("booked")));
+                }
+            }
+        } finally {
+            cm.returnConnection(con);
+        }
+        upcoming = fresh;
+    }
+}
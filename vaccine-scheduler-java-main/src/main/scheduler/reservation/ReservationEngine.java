@@ -0,0 +1,304 @@
+package scheduler.reservation;
+
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineInventory;
+import scheduler.db.CachedStatement;
+import scheduler.db.ConnectionManager;
+import scheduler.db.Query;
+import scheduler.db.SqlErrors;
+import scheduler.feed.Change;
+import scheduler.feed.ChangeFeedManager;
+import scheduler.model.Appointment;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Books an appointment: claim a caregiver's slot, insert the appointment and take one dose in one transaction.
+//
+// The caregiver's Availabilities row is the lock: whoever deletes it owns the slot, so two patients can never be
+// given the same caregiver on the same day. The dose is taken with the guarded UPDATE on Vaccines, which never lets
+// the count go below zero, even with several processes booking; VaccineInventory only pre-filters. If the database
+// picks us as a deadlock victim the whole transaction is rolled back and retried.
+//
+// Candidate caregivers come from AvailabilityIndex, so the hot path never scans Availabilities or Appointments, and
+// are tried in the order Assignment picks. reserveEarliest walks the index's dates in order instead of taking one,
+// so finding the first bookable day costs no more queries than booking a known one.
+//
+// Cancelling runs the booking backwards in one transaction: delete the appointment, put the caregiver's day back
+// into Availabilities and the dose back into Vaccines. Once it commits, both are written through to the caches, so
+// the very next reserve can take them.
+public class ReservationEngine {
+
+    private static final ReservationEngine INSTANCE = new ReservationEngine();
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final Assignment assignment = Assignment.fromSetting();
+
+    public enum Status {
+        RESERVED,
+        NO_CAREGIVER,
+        NO_DOSES,
+        UNKNOWN_VACCINE,
+        // every attempt was rolled back by the database (deadlock or serialization failure)
+        CONFLICT,
+        CANCELLED,
+        NO_APPOINTMENT,
+        // the appointment belongs to another patient or caregiver
+        NOT_YOURS
+    }
+
+    public static class Result {
+        private final Status status;
+        private final Appointment appointment;
+
+        private Result(Status status, Appointment appointment) {
+            this.status = status;
+            this.appointment = appointment;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        // null unless getStatus() is RESERVED or CANCELLED
+        public Appointment getAppointment() {
+            return appointment;
+        }
+    }
+
+    private ReservationEngine() {
+    }
+
+    public static ReservationEngine getInstance() {
+        return INSTANCE;
+    }
+
+    public Result reserve(String patientUsername, Date time, String vaccineName) throws SQLException {
+        return book(patientUsername, vaccineName, time.toLocalDate(), null, false);
+    }
+
+    // books the first date from..to (to may be null for no limit) that has a free caregiver
+    public Result reserveEarliest(String patientUsername, LocalDate from, LocalDate to, String vaccineName)
+            throws SQLException {
+        return book(patientUsername, vaccineName, from, to, true);
+    }
+
+    private Result book(String patientUsername, String vaccineName, LocalDate from, LocalDate to,
+                        boolean anyLaterDate) throws SQLException {
+        // the cached inventory turns away unknown and sold-out vaccines without a round trip; the dose itself is
+        // taken by the guarded UPDATE in the booking transaction
+        VaccineInventory inventory = VaccineInventory.getInstance();
+        Integer doses = inventory.getDoses(vaccineName);
+        if (doses == null || doses <= 0) {
+            return new Result(doses == null ? Status.UNKNOWN_VACCINE : Status.NO_DOSES, null);
+        }
+
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = null;
+        try {
+            con = cm.borrowConnection();
+            con.setAutoCommit(false);
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                try {
+                    Result result = anyLaterDate
+                            ? tryReserveEarliest(con, patientUsername, from, to, vaccineName)
+                            : tryReserve(con, patientUsername, Date.valueOf(from), vaccineName);
+                    if (result.getStatus() == Status.RESERVED) {
+                        con.commit();
+                        inventory.applied(vaccineName, -1);
+                        Appointment appointment = result.getAppointment();
+                        AvailabilityIndex.getInstance().removeAvailability(appointment.getTime(),
+                                appointment.getCaregiverUsername());
+                        CaregiverLoad.getInstance().booked(appointment.getCaregiverUsername());
+                        return result;
+                    }
+                    con.rollback();
+                    return result;
+                } catch (SQLException e) {
+                    con.rollback();
+                    if (!isRetryable(e)) {
+                        throw e;
+                    }
+                }
+                backoff(attempt);
+            }
+            return new Result(Status.CONFLICT, null);
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+
+    // walks the index's dates in order; a date whose candidates all turn out stale is dropped from the index by
+    // tryReserve, so each step moves forward
+    private Result tryReserveEarliest(Connection con, String patientUsername, LocalDate from, LocalDate to,
+                                      String vaccineName) throws SQLException {
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        for (LocalDate day = index.nextFreeDate(from); day != null && (to == null || !day.isAfter(to));
+             day = index.nextFreeDate(day.plusDays(1))) {
+            Result result = tryReserve(con, patientUsername, Date.valueOf(day), vaccineName);
+            if (result.getStatus() != Status.NO_CAREGIVER) {
+                return result;
+            }
+        }
+        return new Result(Status.NO_CAREGIVER, null);
+    }
+
+    private Result tryReserve(Connection con, String patientUsername, Date time, String vaccineName)
+            throws SQLException {
+        // step 1: claim a free caregiver's slot, in the order the assignment strategy picks. Candidates come from the
+        // in-memory index; zero rows deleted means the entry was stale (claimed by another client, or already
+        // booked), so drop it and try the next one
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        String caregiverUsername = null;
+        ConnectionManager cm = ConnectionManager.getInstance();
+        try (CachedStatement cached = cm.prepare(con, Query.CLAIM_SLOT)) {
+            PreparedStatement statement = cached.getStatement();
+            for (String candidate : assignment.candidates(time.toLocalDate(), index.freeCaregivers(time))) {
+                statement.setDate(1, time);
+                statement.setString(2, candidate);
+                statement.setString(3, candidate);
+                statement.setDate(4, time);
+                if (statement.executeUpdate() == 1) {
+                    caregiverUsername = candidate;
+                    break;
+                }
+                index.removeAvailability(time, candidate);
+            }
+        }
+        if (caregiverUsername == null) {
+            return new Result(Status.NO_CAREGIVER, null);
+        }
+
+        // step 2: create the appointment
+        int appointmentId = AppointmentIdAllocator.getInstance().nextId(con);
+        try (CachedStatement cached = cm.prepare(con, Query.INSERT_APPOINTMENT)) {
+            PreparedStatement statement = cached.getStatement();
+            statement.setInt(1, appointmentId);
+            statement.setString(2, patientUsername);
+            statement.setString(3, caregiverUsername);
+            statement.setString(4, vaccineName);
+            statement.setDate(5, time);
+            statement.executeUpdate();
+        }
+
+        // step 3: take the dose. This comes last so the hot Vaccines row is locked only until the commit; zero rows
+        // means another client took the last dose first, and the rollback gives the slot back
+        try (CachedStatement cached = cm.prepare(con, Query.ADD_DOSES_GUARDED)) {
+            PreparedStatement statement = cached.getStatement();
+            statement.setInt(1, -1);
+            statement.setString(2, vaccineName);
+            statement.setInt(3, -1);
+            if (statement.executeUpdate() == 0) {
+                return new Result(Status.NO_DOSES, null);
+            }
+        }
+        ChangeFeedManager.getInstance().publish(con, new Change(Change.Kind.SLOT_BOOKED, caregiverUsername, time));
+
+        Appointment appointment = new Appointment.AppointmentBuilder(appointmentId, time, caregiverUsername,
+                patientUsername, vaccineName).build();
+        return new Result(Status.RESERVED, appointment);
+    }
+
+    // cancels an appointment on behalf of its patient or its caregiver; pass the other username as null
+    public Result cancel(int appointmentId, String patientUsername, String caregiverUsername) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = null;
+        try {
+            con = cm.borrowConnection();
+            con.setAutoCommit(false);
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                try {
+                    Result result = tryCancel(con, appointmentId, patientUsername, caregiverUsername);
+                    if (result.getStatus() != Status.CANCELLED) {
+                        con.rollback();
+                        return result;
+                    }
+                    con.commit();
+                    Appointment appointment = result.getAppointment();
+                    AvailabilityIndex.getInstance().addAvailability(appointment.getTime(),
+                            appointment.getCaregiverUsername());
+                    VaccineInventory.getInstance().applied(appointment.getVaccineName(), 1);
+                    CaregiverLoad.getInstance().released(appointment.getCaregiverUsername());
+                    return result;
+                } catch (SQLException e) {
+                    con.rollback();
+                    if (!SqlErrors.isTransient(e)) {
+                        throw e;
+                    }
+                }
+                backoff(attempt);
+            }
+            return new Result(Status.CONFLICT, null);
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+
+    private Result tryCancel(Connection con, int appointmentId, String patientUsername, String caregiverUsername)
+            throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Appointment appointment;
+        try (CachedStatement cached = cm.prepare(con, Query.FIND_APPOINTMENT)) {
+            PreparedStatement statement = cached.getStatement();
+            statement.setInt(1, appointmentId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return new Result(Status.NO_APPOINTMENT, null);
+                }
+                appointment = new Appointment.AppointmentBuilder(appointmentId, resultSet.getDate("Time"),
+                        resultSet.getString("caregiverUsername"), resultSet.getString("patientUsername"),
+                        resultSet.getString("vaccineName")).build();
+            }
+        }
+        boolean owner = (patientUsername != null && patientUsername.equals(appointment.getPatientUsername()))
+                || (caregiverUsername != null && caregiverUsername.equals(appointment.getCaregiverUsername()));
+        if (!owner) {
+            return new Result(Status.NOT_YOURS, null);
+        }
+
+        // zero rows means a concurrent cancel got there first; it restores the slot and dose, not us
+        try (CachedStatement cached = cm.prepare(con, Query.DELETE_APPOINTMENT)) {
+            PreparedStatement statement = cached.getStatement();
+            statement.setInt(1, appointmentId);
+            if (statement.executeUpdate() == 0) {
+                return new Result(Status.NO_APPOINTMENT, null);
+            }
+        }
+        try (CachedStatement cached = cm.prepare(con, Query.RESTORE_AVAILABILITY)) {
+            PreparedStatement statement = cached.getStatement();
+            statement.setDate(1, appointment.getTime());
+            statement.setString(2, appointment.getCaregiverUsername());
+            statement.setDate(3, appointment.getTime());
+            statement.setString(4, appointment.getCaregiverUsername());
+            statement.executeUpdate();
+        }
+        try (CachedStatement cached = cm.prepare(con, Query.ADD_DOSES)) {
+            PreparedStatement statement = cached.getStatement();
+            statement.setInt(1, 1);
+            statement.setString(2, appointment.getVaccineName());
+            statement.executeUpdate();
+        }
+        ChangeFeedManager.getInstance().publish(con, new Change(Change.Kind.SLOT_RELEASED,
+                appointment.getCaregiverUsername(), appointment.getTime()));
+        return new Result(Status.CANCELLED, appointment);
+    }
+
+    // deadlocks, serialization failures and unique key collisions are all lost races worth retrying
+    private static boolean isRetryable(SQLException e) {
+        return SqlErrors.isTransient(e) || SqlErrors.isUniqueViolation(e);
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(1, 5 << attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package scheduler.reservation;
+
+import scheduler.model.Appointment;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Patients who could not get an appointment wait here for one: "any free caregiver between from and to, with a
+// dose of this vaccine". One request per patient; joining again replaces it and goes to the back of the line.
+//
+// The "waitlist-dispatcher" thread works through the requests in the order they joined whenever capacityAdded() is
+// called (new availability, new doses, a cancellation), and at least every WaitlistPollSec (default 30) to catch
+// capacity added by other processes. Each match is an ordinary reserveEarliest limited to the request's dates, so
+// the waitlist never books anything reserve would not. Outcomes are delivered by username to the listener of the
+// session that joined; a request lives only as long as that session, so its logout and disconnect withdraw it with
+// leave(username, owner), which leaves alone a request another session of the same patient made since. A patient
+// who leaves while their request is being matched may still be booked, and finds the appointment in
+// show_appointments.
+// At most WaitlistMaxSize (default 100000) requests wait at once.
+public class Waitlist {
+
+    private static final Waitlist INSTANCE = new Waitlist();
+
+    private final long pollMs = Math.max(1, Util.getIntSetting("WaitlistPollSec", 30)) * 1000L;
+    private final int maxSize = Math.max(1, Util.getIntSetting("WaitlistMaxSize", 100_000));
+
+    // patient -> request, in the order they joined
+    private final Map<String, Request> requests = new LinkedHashMap<>();
+    // patient -> the session that made the request and where it wants to hear about it; kept apart from the
+    // requests so the dispatcher only ever works with usernames
+    private final Map<String, Listener> listeners = new HashMap<>();
+    private boolean capacityAdded = false;
+    private Thread dispatcher = null;
+
+    private Waitlist() {
+    }
+
+    public static Waitlist getInstance() {
+        return INSTANCE;
+    }
+
+    // false if the waitlist is full; owner is the joining session, see leave(String, Object)
+    public synchronized boolean join(String patientUsername, LocalDate from, LocalDate to, String vaccineName,
+                                     Object owner, Consumer<String> notify) {
+        leave(patientUsername);
+        if (requests.size() >= maxSize) {
+            return false;
+        }
+        requests.put(patientUsername, new Request(patientUsername, from, to, vaccineName));
+        listeners.put(patientUsername, new Listener(owner, notify));
+        if (dispatcher == null) {
+            dispatcher = new Thread(this::dispatch, "waitlist-dispatcher");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+        // capacity may have turned up since the patient's last try
+        capacityAdded();
+        return true;
+    }
+
+    // false if the patient was not waiting; withdraws the request whichever session made it
+    public synchronized boolean leave(String patientUsername) {
+        listeners.remove(patientUsername);
+        return requests.remove(patientUsername) != null;
+    }
+
+    // withdraws the patient's request only if owner made it; for a session that is logging out or going away
+    public synchronized boolean leave(String patientUsername, Object owner) {
+        Listener listener = listeners.get(patientUsername);
+        if (listener == null || listener.owner != owner) {
+            return false;
+        }
+        return leave(patientUsername);
+    }
+
+    public synchronized int size() {
+        return requests.size();
+    }
+
+    // wakes the dispatcher; call after committing anything that lets someone book
+    public synchronized void capacityAdded() {
+        capacityAdded = true;
+        notifyAll();
+    }
+
+    private void dispatch() {
+        while (true) {
+            List<Request> queue;
+            synchronized (this) {
+                try {
+                    if (!capacityAdded) {
+                        wait(pollMs);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                capacityAdded = false;
+                if (requests.isEmpty()) {
+                    continue;
+                }
+                queue = new ArrayList<>(requests.values());
+            }
+            try {
+                match(queue);
+            } catch (SQLException e) {
+                // the next round tries again
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void match(List<Request> queue) throws SQLException {
+        ReservationEngine engine = ReservationEngine.getInstance();
+        LocalDate today = LocalDate.now();
+        // once a vaccine runs out, nobody further down the line can get it this round
+        Set<String> outOfDoses = new HashSet<>();
+        for (Request request : queue) {
+            if (request.to.isBefore(today)) {
+                drop(request, "Your waitlist request for " + request.vaccineName + " expired on " + request.to);
+                continue;
+            }
+            if (outOfDoses.contains(request.vaccineName)) {
+                continue;
+            }
+            LocalDate from = request.from.isBefore(today) ? today : request.from;
+            ReservationEngine.Result result = engine.reserveEarliest(request.patientUsername, from, request.to,
+                    request.vaccineName);
+            switch (result.getStatus()) {
+                case RESERVED:
+                    Appointment appointment = result.getAppointment();
+                    drop(request, "From the waitlist: Appointment ID " + appointment.getAppointmentId() +
+                            ", Caregiver username " + appointment.getCaregiverUsername() +
+                            ", Date " + appointment.getTime());
+                    break;
+                case NO_DOSES:
+                    outOfDoses.add(request.vaccineName);
+                    break;
+                case UNKNOWN_VACCINE:
+                    drop(request, "Your waitlist request was dropped, vaccine " + request.vaccineName +
+                            " does not exist");
+                    break;
+                default:
+                    // no caregiver in the range yet, or lost every race; wait for the next round
+                    break;
+            }
+        }
+    }
+
+    private void drop(Request request, String message) {
+        Listener listener;
+        synchronized (this) {
+            // a request replaced or withdrawn meanwhile keeps its listener for whoever owns it now
+            if (!requests.remove(request.patientUsername, request)) {
+                return;
+            }
+            listener = listeners.remove(request.patientUsername);
+        }
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.notify.accept(message);
+        } catch (RuntimeException e) {
+            // the patient's connection is gone; the appointment still shows up in show_appointments
+        }
+    }
+
+    private static class Listener {
+        private final Object owner;
+        private final Consumer<String> notify;
+
+        private Listener(Object owner, Consumer<String> notify) {
+            this.owner = owner;
+            this.notify = notify;
+        }
+    }
+
+    private static class Request {
+        private final String patientUsername;
+        private final LocalDate from;
+        private final LocalDate to;
+        private final String vaccineName;
+
+        private Request(String patientUsername, LocalDate from, LocalDate to, String vaccineName) {
+            this.patientUsername = patientUsername;
+            this.from = from;
+            this.to = to;
+            this.vaccineName = vaccineName;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package scheduler.util;
+
+import java.util.Objects;
+
+// How a password hash is computed: the PBKDF2 variant, its iteration count and the key length in bits.
+//
+// Every account stores the spec its hash was made with in the HashSpec column, as "algorithm:iterations:keyBits",
+// so the cost can be raised without breaking existing passwords; a successful login rehashes the password with the
+// current spec. Accounts created before the column existed have NULL there and use LEGACY.
+// The current spec for new hashes comes from the settings (environment variables or -D system properties):
+//   HashAlgorithm     PBKDF2 variant (default PBKDF2WithHmacSHA256)
+//   HashIterations    iteration count (default 100000)
+//   HashCalibrateMs   if set, ignore HashIterations and measure this machine at startup for the iteration count that
+//                     takes about this many milliseconds per hash
+// The spec is fixed for the life of the process; only an operator changes it, by restarting with other settings.
+public class HashSpec {
+
+    // what Util.generateHash used before specs were stored
+    public static final HashSpec LEGACY = new HashSpec("PBKDF2WithHmacSHA1", 10, 16);
+
+    // the Hash columns are BINARY(16)
+    public static final int KEY_BITS = 128;
+
+    private static final int CALIBRATION_ITERATIONS = 10_000;
+
+    private static final HashSpec current = fromSettings();
+
+    private final String algorithm;
+    private final int iterations;
+    private final int keyBits;
+
+    public HashSpec(String algorithm, int iterations, int keyBits) {
+        if (iterations < 1 || keyBits < 1 || keyBits > KEY_BITS) {
+            throw new IllegalArgumentException("Invalid hash spec " + algorithm + ":" + iterations + ":" + keyBits);
+        }
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        this.keyBits = keyBits;
+    }
+
+    // the spec new hashes are made with
+    public static HashSpec current() {
+        return current;
+    }
+
+    // parses a stored spec; NULL means the account predates stored specs
+    public static HashSpec parse(String value) {
+        if (value == null) {
+            return LEGACY;
+        }
+        String[] parts = value.trim().split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid hash spec " + value);
+        }
+        try {
+            return new HashSpec(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid hash spec " + value);
+        }
+    }
+
+    // finds the iteration count for which one hash with the given algorithm takes about targetMillis on this machine
+    public static HashSpec calibrate(String algorithm, long targetMillis) {
+        HashSpec probe = new HashSpec(algorithm, CALIBRATION_ITERATIONS, KEY_BITS);
+        byte[] salt = Util.generateSalt();
+        // let the JIT compile the hash loop first, then take the fastest of a few runs so a GC pause or a busy core
+        // does not skew the estimate
+        for (int i = 0; i < 10; i++) {
+            Util.generateHash("calibration", salt, probe);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            Util.generateHash("calibration", salt, probe);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double perIteration = (double) best / CALIBRATION_ITERATIONS;
+        long iterations = Math.round(targetMillis * 1e6 / perIteration / 1000) * 1000;
+        return new HashSpec(algorithm, (int) Math.max(1000, Math.min(Integer.MAX_VALUE, iterations)), KEY_BITS);
+    }
+
+    private static HashSpec fromSettings() {
+        String algorithm = Util.getSetting("HashAlgorithm");
+        if (algorithm == null) {
+            algorithm = "PBKDF2WithHmacSHA256";
+        }
+        int calibrateMillis = Util.getIntSetting("HashCalibrateMs", 0);
+        if (calibrateMillis > 0) {
+            HashSpec spec = calibrate(algorithm, calibrateMillis);
+            System.out.println("Hashing with " + spec + ", calibrated for " + calibrateMillis + " ms; " +
+                    "set HashIterations=" + spec.getIterations() + " to skip calibration on the next start");
+            return spec;
+        }
+        return new HashSpec(algorithm, Math.max(1, Util.getIntSetting("HashIterations", 100_000)), KEY_BITS);
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getKeyBits() {
+        return keyBits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HashSpec)) {
+            return false;
+        }
+        HashSpec other = (HashSpec) o;
+        return iterations == other.iterations && keyBits == other.keyBits && algorithm.equals(other.algorithm);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(algorithm, iterations, keyBits);
+    }
+
+    // the stored form, accepted by parse()
+    @Override
+    public String toString() {
+        return algorithm + ":" + iterations + ":" + keyBits;
+    }
+}
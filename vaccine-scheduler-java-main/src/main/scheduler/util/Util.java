@@ -2,17 +2,70 @@ package scheduler.util;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 public class Util {
 
-    // constants for handling password
-    private static final int HASH_STRENGTH = 10;
-    private static final int KEY_LENGTH = 16;
+    // SecretKeyFactory.getInstance() walks the security providers on every call and factories are not thread-safe,
+    // so each thread keeps its own factory per algorithm
+    private static final ThreadLocal<Map<String, SecretKeyFactory>> FACTORIES = ThreadLocal.withInitial(HashMap::new);
+
+    // Reads a setting from a -D system property, falling back to the environment variable of the same name.
+    // Returns null if neither is set.
+    public static String getSetting(String name) {
+        String value = System.getProperty(name);
+        return value != null ? value : System.getenv(name);
+    }
+
+    public static int getIntSetting(String name, int defaultValue) {
+        String value = getSetting(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Ignoring invalid " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    // Resolves a file named by an import command (add_doses_file, upload_availability_file, import_users) inside
+    // ImportDir (default "imports" under the working directory). Returns null for any name that would end up
+    // outside it, absolute paths, ".." and symlinks included, so a remote client can never read other server files.
+    public static Path resolveImportFile(String name) {
+        String setting = getSetting("ImportDir");
+        Path dir = Paths.get(setting != null ? setting : "imports").toAbsolutePath().normalize();
+        Path file;
+        try {
+            file = dir.resolve(name).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (!file.startsWith(dir) || file.equals(dir)) {
+            return null;
+        }
+        try {
+            if (Files.exists(file) && !file.toRealPath().startsWith(dir.toRealPath())) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return file;
+    }
 
     public static byte[] generateSalt() {
         // Generate a random cryptographic salt
@@ -22,20 +75,70 @@ public class Util {
         return salt;
     }
 
+    // hashes with the current spec, see HashSpec
     public static byte[] generateHash(String password, byte[] salt) {
+        return generateHash(password, salt, HashSpec.current());
+    }
+
+    public static byte[] generateHash(String password, byte[] salt, HashSpec spec) {
         // Specify the hash parameters
-        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, HASH_STRENGTH, KEY_LENGTH);
+        KeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt, spec.getIterations(), spec.getKeyBits());
 
         // Generate the hash
-        SecretKeyFactory factory = null;
-        byte[] hash = null;
         try {
-            factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-            hash = factory.generateSecret(spec).getEncoded();
+            SecretKeyFactory factory = FACTORIES.get().get(spec.getAlgorithm());
+            if (factory == null) {
+                factory = SecretKeyFactory.getInstance(spec.getAlgorithm());
+                FACTORIES.get().put(spec.getAlgorithm(), factory);
+            }
+            return factory.generateSecret(keySpec).getEncoded();
         } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
             throw new IllegalStateException();
         }
-        return hash;
+    }
+
+    // Compares a hash read from a BINARY column, which pads short hashes with zeros, against a freshly computed one.
+    // Runs in constant time so the comparison does not leak how many bytes matched.
+    public static boolean hashMatches(byte[] stored, byte[] computed) {
+        if (stored == null || stored.length < computed.length) {
+            return false;
+        }
+        byte[] padded = Arrays.copyOf(computed, stored.length);
+        return MessageDigest.isEqual(stored, padded);
+    }
+
+    // returns the first rule the password breaks, or null if it is strong enough
+    public static String passwordWeakness(String password) {
+        if (password.length() < 8) {
+            return "Please ensure password is at least 8 characters long";
+        }
+        if (!(password.contains("!") | password.contains("@") | password.contains("#") | password.contains("?"))) {
+            return "Please use one of the following special characters: !, @, #, ?";
+        }
+
+        boolean hasUpperCase = false;
+        boolean hasLowerCase = false;
+        boolean hasDigit = false;
+        for (char c : password.toCharArray()) {
+            if (Character.isUpperCase(c)) {
+                hasUpperCase = true;
+            } else if (Character.isLowerCase(c)) {
+                hasLowerCase = true;
+            } else if (Character.isDigit(c)) {
+                hasDigit = true;
+            }
+        }
+
+        if (!hasLowerCase) {
+            return "Please include at least 1 lower case letter";
+        }
+        if (!hasUpperCase) {
+            return "Please include at least 1 upper case letter";
+        }
+        if (!hasDigit) {
+            return "Please include at least 1 number";
+        }
+        return null;
     }
 
     public static byte[] trim(byte[] bytes)
@@ -0,0 +1,91 @@
+package scheduler.feed;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineInventory;
+import scheduler.db.ConnectionManager;
+import scheduler.model.Vaccine;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Two Scheduler instances in one JVM: ChangeFeedManager publishes through this instance's LocalChangeFeed, and
+// other plays the second instance on the same log.
+public class ChangeFeedManagerTest {
+
+    private final LocalChangeFeed feed = new LocalChangeFeed();
+    private final LocalChangeFeed other = feed.peer();
+
+    @BeforeEach
+    public void installFeed() {
+        ChangeFeedManager.getInstance().setFeed(feed);
+    }
+
+    @AfterEach
+    public void removeFeed() {
+        ChangeFeedManager.getInstance().setFeed(null);
+    }
+
+    @Test
+    public void bulkRestockPublishesOneChange() throws SQLException {
+        Map<String, Integer> doses = new TreeMap<>();
+        doses.put("cf-bulk-a", 10);
+        doses.put("cf-bulk-b", 20);
+        doses.put("cf-bulk-c", 30);
+        Vaccine.addDosesInBulk(doses);
+
+        List<Change> changes = other.poll();
+        assertEquals(1, changes.size());
+        assertEquals(Change.Kind.DOSES_CHANGED, changes.get(0).getKind());
+        assertNull(changes.get(0).getSubject());
+        assertEquals(20, VaccineInventory.getInstance().getDoses("cf-bulk-b"));
+    }
+
+    @Test
+    public void ownChangesAreNotPolledBack() {
+        feed.publish(null, new Change(Change.Kind.DOSES_CHANGED, "cf-own", null));
+        assertTrue(feed.poll().isEmpty());
+        assertEquals(1, other.poll().size());
+        assertTrue(other.poll().isEmpty());
+    }
+
+    @Test
+    public void tailAppliesOtherInstancesChanges() throws SQLException {
+        Date day = Date.valueOf(LocalDate.of(2041, 6, 1));
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        index.addAvailability(day, "cf-tail-cg");
+        update("INSERT INTO Vaccines (Name, Doses) VALUES ('cf-tail-vax', 7)");
+
+        // the other instance booked the caregiver and stocked a vaccine this one has never seen
+        other.publish(null, new Change(Change.Kind.SLOT_BOOKED, "cf-tail-cg", day));
+        other.publish(null, new Change(Change.Kind.DOSES_CHANGED, "cf-tail-vax", null));
+
+        assertEquals(2, ChangeFeedManager.getInstance().tail());
+        assertFalse(index.freeCaregivers(day).contains("cf-tail-cg"));
+        assertEquals(7, VaccineInventory.getInstance().getDoses("cf-tail-vax"));
+        assertEquals(0, ChangeFeedManager.getInstance().tail());
+    }
+
+    private static void update(String sql) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (PreparedStatement statement = con.prepareStatement(sql)) {
+            statement.executeUpdate();
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package scheduler.feed;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import scheduler.db.ConnectionManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// How JdbcChangeFeed tails ChangeLog when transactions commit out of sequence order. Rows are written straight into
+// the table with chosen sequence numbers, standing in for other instances' commits.
+public class JdbcChangeFeedTest {
+
+    private static final long GAP_MS = 300;
+
+    private JdbcChangeFeed feed;
+    private long base;
+
+    @BeforeEach
+    public void startFeed() throws SQLException {
+        // read when the feed is created
+        System.setProperty("ChangeFeedGapMs", String.valueOf(GAP_MS));
+        try {
+            feed = new JdbcChangeFeed();
+        } finally {
+            System.clearProperty("ChangeFeedGapMs");
+        }
+        // the first poll only moves the cursor to the end of the log
+        assertTrue(feed.poll().isEmpty());
+        base = latest();
+    }
+
+    @Test
+    public void deliversRowsInSequenceOrder() throws SQLException {
+        insert(base + 1, "one");
+        insert(base + 2, "two");
+        insert(base + 3, "three");
+        assertEquals(List.of("one", "two", "three"), subjects(feed.poll()));
+        assertTrue(feed.poll().isEmpty());
+    }
+
+    @Test
+    public void deliversOutOfOrderCommitsOnce() throws SQLException {
+        // 3 commits before 1 and 2
+        insert(base + 3, "three");
+        assertEquals(List.of("three"), subjects(feed.poll()));
+        insert(base + 1, "one");
+        assertEquals(List.of("one"), subjects(feed.poll()));
+        insert(base + 2, "two");
+        assertEquals(List.of("two"), subjects(feed.poll()));
+        assertTrue(feed.poll().isEmpty());
+    }
+
+    @Test
+    public void gapFilledLaterIsDeliveredWithNewRows() throws SQLException {
+        insert(base + 2, "two");
+        assertEquals(List.of("two"), subjects(feed.poll()));
+        insert(base + 1, "one");
+        insert(base + 3, "three");
+        assertEquals(List.of("one", "three"), subjects(feed.poll()));
+        assertTrue(feed.poll().isEmpty());
+    }
+
+    @Test
+    public void gapIsGivenUpAfterTheTimeout() throws Exception {
+        insert(base + 2, "two");
+        assertEquals(List.of("two"), subjects(feed.poll()));
+        Thread.sleep(GAP_MS * 2);
+        // this poll finds the gap expired and takes base + 1 to have been rolled back
+        assertTrue(feed.poll().isEmpty());
+        insert(base + 1, "too late");
+        insert(base + 3, "three");
+        assertEquals(List.of("three"), subjects(feed.poll()));
+    }
+
+    private static List<String> subjects(List<Change> changes) {
+        List<String> subjects = new ArrayList<>();
+        for (Change change : changes) {
+            subjects.add(change.getSubject());
+        }
+        return subjects;
+    }
+
+    private static void insert(long seq, String subject) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (PreparedStatement statement = con.prepareStatement("INSERT INTO ChangeLog " +
+                "(Seq, Origin, Kind, Subject, Time, CreatedAt) VALUES (?, 'other-instance', ?, ?, NULL, ?)")) {
+            statement.setLong(1, seq);
+            statement.setString(2, Change.Kind.DOSES_CHANGED.name());
+            statement.setString(3, subject);
+            statement.setLong(4, System.currentTimeMillis());
+            statement.executeUpdate();
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+
+    private static long latest() throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (PreparedStatement statement = con.prepareStatement("SELECT COALESCE(MAX(Seq), 0) FROM ChangeLog");
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+}
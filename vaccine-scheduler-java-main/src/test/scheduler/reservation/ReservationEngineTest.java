@@ -0,0 +1,255 @@
+package scheduler.reservation;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineInventory;
+import scheduler.db.ConnectionManager;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Many patients booking at once against the embedded database (surefire sets Storage=embedded). Every test uses its
+// own vaccine, caregivers and days, so the tests do not see each other's rows in the shared in-memory database.
+public class ReservationEngineTest {
+
+    // below PoolMaxSize, so every booking holds a connection and the transactions really do overlap
+    private static final int THREADS = 8;
+
+    private static final LocalDate DAY = LocalDate.of(2040, 3, 1);
+
+    @BeforeAll
+    public static void startCaches() throws SQLException {
+        AvailabilityIndex.getInstance().start();
+        VaccineInventory.getInstance().start();
+    }
+
+    @Test
+    public void sameDayNeverDoubleBooksACaregiver() throws Exception {
+        LocalDate day = DAY;
+        List<String> caregivers = addCaregivers("rt-same", 3, day);
+        addVaccine("rt-same-vax", 1000);
+        List<String> patients = addPatients("rt-same", 40);
+
+        List<ReservationEngine.Result> results = reserveAll(patients, patient ->
+                ReservationEngine.getInstance().reserve(patient, Date.valueOf(day), "rt-same-vax"));
+
+        List<String> booked = bookedCaregivers("rt-same-vax", day);
+        assertEquals(caregivers.size(), count(results, ReservationEngine.Status.RESERVED));
+        assertEquals(caregivers.size(), booked.size());
+        assertEquals(caregivers.size(), new HashSet<>(booked).size(), "a caregiver was booked twice: " + booked);
+        assertEquals(1000 - booked.size(), doses("rt-same-vax"));
+        assertEquals(0, availabilities(caregivers, day));
+    }
+
+    @Test
+    public void lastDosesAreNeverOversold() throws Exception {
+        LocalDate day = DAY.plusDays(5);
+        addCaregivers("rt-scarce", 30, day);
+        addVaccine("rt-scarce-vax", 5);
+        List<String> patients = addPatients("rt-scarce", 30);
+
+        List<ReservationEngine.Result> results = reserveAll(patients, patient ->
+                ReservationEngine.getInstance().reserve(patient, Date.valueOf(day), "rt-scarce-vax"));
+
+        assertEquals(5, count(results, ReservationEngine.Status.RESERVED));
+        assertEquals(5, bookedCaregivers("rt-scarce-vax", day).size());
+        assertEquals(0, doses("rt-scarce-vax"));
+        // a booking that lost the race for the dose must also have given its caregiver's slot back
+        assertEquals(25, availabilities(caregiversNamed("rt-scarce", 30), day));
+    }
+
+    @Test
+    public void reserveEarliestBooksEachCaregiverOncePerDay() throws Exception {
+        LocalDate from = DAY.plusDays(10);
+        List<String> caregivers = addCaregivers("rt-early", 4, from, from.plusDays(1), from.plusDays(2));
+        addVaccine("rt-early-vax", 1000);
+        List<String> patients = addPatients("rt-early", 20);
+
+        List<ReservationEngine.Result> results = reserveAll(patients, patient ->
+                ReservationEngine.getInstance().reserveEarliest(patient, from, from.plusDays(2), "rt-early-vax"));
+
+        int booked = 0;
+        for (int day = 0; day < 3; day++) {
+            List<String> onDay = bookedCaregivers("rt-early-vax", from.plusDays(day));
+            assertEquals(onDay.size(), new HashSet<>(onDay).size(), "a caregiver was booked twice: " + onDay);
+            booked += onDay.size();
+        }
+        assertEquals(caregivers.size() * 3, booked);
+        assertEquals(booked, count(results, ReservationEngine.Status.RESERVED));
+        assertEquals(1000 - booked, doses("rt-early-vax"));
+    }
+
+    @Test
+    public void cancelsAndRebookingsKeepTheCountsConsistent() throws Exception {
+        LocalDate day = DAY.plusDays(20);
+        List<String> caregivers = addCaregivers("rt-churn", 4, day);
+        addVaccine("rt-churn-vax", 4);
+        List<String> patients = addPatients("rt-churn", 16);
+
+        // each patient books, cancels and books again, so slots and doses keep moving between patients
+        List<ReservationEngine.Result> results = reserveAll(patients, patient -> {
+            ReservationEngine engine = ReservationEngine.getInstance();
+            ReservationEngine.Result first = engine.reserve(patient, Date.valueOf(day), "rt-churn-vax");
+            if (first.getStatus() == ReservationEngine.Status.RESERVED) {
+                engine.cancel(first.getAppointment().getAppointmentId(), patient, null);
+            }
+            return engine.reserve(patient, Date.valueOf(day), "rt-churn-vax");
+        });
+
+        List<String> booked = bookedCaregivers("rt-churn-vax", day);
+        assertEquals(booked.size(), new HashSet<>(booked).size(), "a caregiver was booked twice: " + booked);
+        assertEquals(booked.size(), count(results, ReservationEngine.Status.RESERVED));
+        int doses = doses("rt-churn-vax");
+        assertTrue(doses >= 0, "doses went negative: " + doses);
+        assertEquals(4, doses + booked.size());
+        assertEquals(caregivers.size(), booked.size() + availabilities(caregivers, day));
+    }
+
+    private interface Booking {
+        ReservationEngine.Result book(String patient) throws SQLException;
+    }
+
+    // runs one booking per patient on THREADS threads, all released at once
+    private static List<ReservationEngine.Result> reserveAll(List<String> patients, Booking booking)
+            throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<ReservationEngine.Result>> futures = new ArrayList<>();
+            for (String patient : patients) {
+                Callable<ReservationEngine.Result> task = () -> {
+                    start.await();
+                    return booking.book(patient);
+                };
+                futures.add(pool.submit(task));
+            }
+            start.countDown();
+            List<ReservationEngine.Result> results = new ArrayList<>();
+            for (Future<ReservationEngine.Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static int count(List<ReservationEngine.Result> results, ReservationEngine.Status status) {
+        int count = 0;
+        for (ReservationEngine.Result result : results) {
+            if (result.getStatus() == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<String> caregiversNamed(String prefix, int count) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add(prefix + "-cg" + i);
+        }
+        return names;
+    }
+
+    // caregivers available on each of the given days, written through to the index as upload_availability would
+    private static List<String> addCaregivers(String prefix, int count, LocalDate... days) throws SQLException {
+        List<String> names = caregiversNamed(prefix, count);
+        for (String name : names) {
+            update("INSERT INTO Caregivers (Username) VALUES (?)", name);
+            for (LocalDate day : days) {
+                update("INSERT INTO Availabilities (Time, Username) VALUES (?, ?)", Date.valueOf(day), name);
+                AvailabilityIndex.getInstance().addAvailability(Date.valueOf(day), name);
+            }
+        }
+        return names;
+    }
+
+    private static List<String> addPatients(String prefix, int count) throws SQLException {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add(prefix + "-pt" + i);
+            update("INSERT INTO Patients (Username) VALUES (?)", prefix + "-pt" + i);
+        }
+        return names;
+    }
+
+    private static void addVaccine(String name, int doses) throws SQLException {
+        update("INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)", name, doses);
+        VaccineInventory.getInstance().applied(name, doses);
+    }
+
+    private static List<String> bookedCaregivers(String vaccine, LocalDate day) throws SQLException {
+        List<String> caregivers = new ArrayList<>();
+        for (Object caregiver : query("SELECT caregiverUsername FROM Appointments WHERE vaccineName = ? AND Time = ?",
+                vaccine, Date.valueOf(day))) {
+            caregivers.add((String) caregiver);
+        }
+        return caregivers;
+    }
+
+    private static int doses(String vaccine) throws SQLException {
+        return (Integer) query("SELECT Doses FROM Vaccines WHERE Name = ?", vaccine).get(0);
+    }
+
+    private static int availabilities(List<String> caregivers, LocalDate day) throws SQLException {
+        Set<String> wanted = new HashSet<>(caregivers);
+        int count = 0;
+        for (Object caregiver : query("SELECT Username FROM Availabilities WHERE Time = ?", Date.valueOf(day))) {
+            if (wanted.contains(caregiver)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void update(String sql, Object... params) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (PreparedStatement statement = con.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            statement.executeUpdate();
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+
+    // the first column of every row
+    private static List<Object> query(String sql, Object... params) throws SQLException {
+        ConnectionManager cm = ConnectionManager.getInstance();
+        Connection con = cm.borrowConnection();
+        try (PreparedStatement statement = con.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            List<Object> values = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    values.add(resultSet.getObject(1));
+                }
+            }
+            return values;
+        } finally {
+            cm.returnConnection(con);
+        }
+    }
+}